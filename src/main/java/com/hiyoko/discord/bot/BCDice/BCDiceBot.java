@@ -3,14 +3,24 @@ package com.hiyoko.discord.bot.BCDice;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import org.javacord.api.DiscordApi;
 import org.javacord.api.DiscordApiBuilder;
 import org.javacord.api.entity.message.MessageAttachment;
 import org.javacord.api.entity.message.MessageAuthor;
+import org.javacord.api.entity.message.Messageable;
+import org.javacord.api.event.message.MessageCreateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hiyoko.discord.bot.BCDice.DiceClient.AsyncUtil;
+import com.hiyoko.discord.bot.BCDice.DiceClient.ChannelSystemStore;
+import com.hiyoko.discord.bot.BCDice.Metrics.Counter;
+import com.hiyoko.discord.bot.BCDice.Metrics.Histogram;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsServer;
 import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
 
 /**
@@ -20,6 +30,10 @@ import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
  */
 public class BCDiceBot {
 	final Logger logger = LoggerFactory.getLogger(BCDiceBot.class);
+	private final MetricsRegistry metrics = MetricsRegistry.getShared();
+	private final Counter messageCounter = metrics.counter("bcdice_discord_messages_total", "Messages received from Discord");
+	private final Counter sendErrorCounter = metrics.counter("bcdice_discord_send_errors_total", "Messages failed to be sent to Discord");
+	private final Histogram sendLatency = metrics.histogram("bcdice_discord_send_seconds", "Latency of sending the messages to Discord");
 	/**
 	 * Constructor.
 	 * @param token Discord bot token
@@ -57,61 +71,123 @@ public class BCDiceBot {
 	 */
 	public BCDiceBot(String token, String bcDiceUrl, boolean errorSensitive) {
 		BCDiceCLI bcDice = new BCDiceCLI(getUrlList(bcDiceUrl), getDefaultSystem(), errorSensitive);
+		ChannelSystemStore channelSystemStore = ChannelSystemStore.fromEnv();
+		if(channelSystemStore != null) {
+			try {
+				bcDice.useChannelSystemStore(channelSystemStore);
+				Runtime.getRuntime().addShutdownHook(new Thread(channelSystemStore::close));
+			} catch (IOException e) {
+				logger.error("Failed to load the system of each channel. The changes are not saved", e);
+			}
+		}
+		MetricsServer.fromEnv(metrics);
 		new DiscordApiBuilder().setToken(token).login().thenAccept(api -> {
 
 			String myId = api.getYourself().getIdAsString();
+			ChannelDispatcher dispatcher = ChannelDispatcher.getShared();
 			api.addMessageCreateListener(event -> {
+				messageCounter.increment();
 				String channel = event.getChannel().getIdAsString();
 				MessageAuthor user = event.getMessageAuthor();
-				String name = user.getName();
 				String userId = user.getIdAsString();
-				String message = event.getMessage().getContent();
-				List<MessageAttachment> attachements = event.getMessage().getAttachments();
-
-				logger.debug(String.format("%s posts: https://discordapp.com/channels/%s/%s/%s",
-						userId,
-						event.getServer().get().getIdAsString(), channel, event.getMessage().getIdAsString()));
-				api.updateActivity("bcdice help とチャットに打ち込むとコマンドのヘルプを確認できます");
 				if( myId.equals(userId) ) { return; }
-				if(! bcDice.isRoll( message )) {
-					logger.debug("bcdice command");
-					bcDice.inputs(message, userId, channel, attachements).forEach(msg->{
-						event.getChannel().sendMessage(msg);
-					});
-					return;
-				}
-
-				try {
-					List<DicerollResult> rollResults = bcDice.rolls(message, channel);
-					logger.debug("Dice command request for dice server is done");
-					for(DicerollResult rollResult : rollResults) {
-						if(rollResult.isError()) {
-							throw new IOException(rollResult.getText());
-						}
-						if( rollResult.isRolled() ) {
-							event.getChannel().sendMessage(String.format("＞%s\n%s", name, rollResult.toString()));
-						}
-						if( rollResult.isSecret() ) {
-							int index = Integer.parseInt(bcDice.inputs("bcdice save " + rollResult.getSystem() + rollResult.getText(), userId, "dummy").get(0));
-							try {
-								api.getUserById(userId).get().sendMessage(rollResult.getSystem() + rollResult.getText());
-								api.getUserById(userId).get().sendMessage("To recall this,\nbcdice load " + index);
-							} catch (InterruptedException e) {
-								throw new IOException(e.getMessage(), e);
-							} catch (ExecutionException e) {
-								throw new IOException(e.getMessage(), e);
-							}
+				// The listener thread only passes the event. The results of each channel are posted in order.
+				dispatcher.dispatch(channel, () -> handleMessage(api, event, bcDice), (post, e) -> {
+					if(e instanceof RateLimiter.RateLimitedException) {
+						// reply only to the first message of the flood
+						if(((RateLimiter.RateLimitedException) e).isFirst()) {
+							send(event.getChannel(), String.format("＞%s\n%s", user.getName(), e.getMessage()));
 						}
+					} else if(e != null) {
+						send(event.getChannel(), String.format("＞%s\n[ERROR]%s", user.getName(), e.getMessage()));
+						logger.warn(String.format("USERID: %s MESSAGE: %s", userId, event.getMessage().getContent()));
+						logger.warn("Failed to reply to user request", e);
+					} else {
+						post.run();
 					}
-				} catch (IOException e) {
-					event.getChannel().sendMessage(String.format("＞%s\n[ERROR]%s", name, e.getMessage()));
-					logger.warn(String.format("USERID: %s MESSAGE: %s", userId, message));
-					logger.warn("Failed to reply to user request", e);
-				}
+				});
 			});
 		});
 	}
 
+	/**
+	 * Called in the dispatcher thread.
+	 * @return future of the action to post the result. It's run after the previous results of the channel are posted
+	 */
+	private CompletableFuture<Runnable> handleMessage(DiscordApi api, MessageCreateEvent event, BCDiceCLI bcDice) {
+		String channel = event.getChannel().getIdAsString();
+		MessageAuthor user = event.getMessageAuthor();
+		String name = user.getName();
+		String userId = user.getIdAsString();
+		String message = event.getMessage().getContent();
+		List<MessageAttachment> attachements = event.getMessage().getAttachments();
+
+		if(logger.isDebugEnabled()) {
+			// DM has no server
+			logger.debug(String.format("%s posts: https://discordapp.com/channels/%s/%s/%s",
+					userId,
+					event.getServer().map(server -> server.getIdAsString()).orElse("@me"), channel, event.getMessage().getIdAsString()));
+		}
+		api.updateActivity("bcdice help とチャットに打ち込むとコマンドのヘルプを確認できます");
+		MessageClassifier.Classification classification = bcDice.classify(message, channel);
+		if(classification.getKind() == MessageClassifier.Kind.IGNORE) {
+			return CompletableFuture.completedFuture(() -> {});
+		}
+		if(classification.getKind() == MessageClassifier.Kind.ADMIN) {
+			logger.debug("bcdice command");
+			List<String> replies = bcDice.inputs(message, userId, channel, attachements);
+			return CompletableFuture.completedFuture(() -> replies.forEach(msg->{
+				send(event.getChannel(), msg);
+			}));
+		}
+
+		return bcDice.rollsAsync(classification, channel, userId).thenApply(rollResults -> {
+			logger.debug("Dice command request for dice server is done");
+			for(DicerollResult rollResult : rollResults) {
+				if(rollResult.isError()) {
+					throw new CompletionException(new IOException(rollResult.getText()));
+				}
+			}
+			return () -> postRollResults(api, event, bcDice, rollResults);
+		});
+	}
+
+	private void postRollResults(DiscordApi api, MessageCreateEvent event, BCDiceCLI bcDice, List<DicerollResult> rollResults) {
+		MessageAuthor user = event.getMessageAuthor();
+		String name = user.getName();
+		String userId = user.getIdAsString();
+		for(DicerollResult rollResult : rollResults) {
+			if( rollResult.isRolled() ) {
+				send(event.getChannel(), String.format("＞%s\n%s", name, rollResult.toString()));
+			}
+			if( rollResult.isSecret() ) {
+				int index = bcDice.saveSecretRoll(userId, rollResult);
+				api.getUserById(userId).thenAccept(targetUser -> {
+					send(targetUser, rollResult.getSystem() + rollResult.getText());
+					send(targetUser, "To recall this,\nbcdice load " + index);
+				}).exceptionally(e -> {
+					Throwable cause = AsyncUtil.unwrap(e);
+					send(event.getChannel(), String.format("＞%s\n[ERROR]%s", name, cause.getMessage()));
+					logger.warn(String.format("USERID: %s MESSAGE: %s", userId, event.getMessage().getContent()));
+					logger.warn("Failed to send the secret dice result", cause);
+					return null;
+				});
+			}
+		}
+	}
+
+	private void send(Messageable target, String message) {
+		long started = System.nanoTime();
+		target.sendMessage(message).whenComplete((sent, e) -> {
+			if(e == null) {
+				sendLatency.observeSince(started);
+			} else {
+				sendErrorCounter.increment();
+				logger.warn("Failed to send the message to Discord", AsyncUtil.unwrap(e));
+			}
+		});
+	}
+
 	/**
 	 * First called method.
 	 * @param args command line parameters. 1st should be Discord bot token. 2nd should be the URL of BCDice-API.
@@ -5,23 +5,32 @@ import org.javacord.api.entity.message.MessageAttachment;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.hiyoko.discord.bot.BCDice.DiceClient.AsyncUtil;
+import com.hiyoko.discord.bot.BCDice.DiceClient.ChannelSystemStore;
 import com.hiyoko.discord.bot.BCDice.DiceClient.DiceClient;
+import com.hiyoko.discord.bot.BCDice.DiceClient.DiceCommandEncoder;
 import com.hiyoko.discord.bot.BCDice.DiceClient.DiceClientFactory;
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+import com.hiyoko.discord.bot.BCDice.DiceClient.HttpConnectionPool;
+import com.hiyoko.discord.bot.BCDice.Metrics.Counter;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
 import com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients.OriginalDiceBotClient;
 import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
 import com.hiyoko.discord.bot.BCDice.dto.OriginalDiceBot;
 import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+import com.hiyoko.discord.bot.BCDice.dto.SystemList;
 import com.hiyoko.discord.bot.BCDice.dto.VersionInfo;
 
 import org.slf4j.Logger;
@@ -36,17 +45,24 @@ import org.slf4j.Logger;
 public class BCDiceCLI {
 	private DiceClient client;
 	
-	private Map<String, List<String>> savedMessage;
+	private SecretRollStore savedMessage;
 	private String password;
 	private String rollCommand = "";
 	private boolean isSuppressed = true;
 	private final OriginalDiceBotClient originalDiceBotClient;
-	private static final String[] REMOVE_WHITESPACE_TARGETS = {"<", ">", "="};
+	private final DiceCommandEncoder commandEncoder = new DiceCommandEncoder();
+	private final MessageClassifier classifier = new MessageClassifier(this::isDiceCommand, this::findOriginalDiceBot);
 	private final Logger logger = LoggerFactory.getLogger(BCDiceCLI.class);
+	private int multirollParallelism = Math.max(1, EnvUtil.getInt("BCDICE_MULTIROLL_PARALLELISM", DEFAULT_MULTIROLL_PARALLELISM));
+	private boolean multirollAsRepeat = "repeat".equals(EnvUtil.getString("BCDICE_MULTIROLL_MODE", ""));
+	private volatile SystemListMessage systemListMessage = null;
+	private RateLimiter rateLimiter = RateLimiter.fromEnv();
+	private final Counter[] classifiedCounters = newClassifiedCounters();
+	private final Counter originalDiceBotCounter = MetricsRegistry.getShared().counter("bcdice_original_dicebot_rolls_total", "Rolls of the original dice bots");
+	private final Counter secretRollCounter = MetricsRegistry.getShared().counter("bcdice_secret_rolls_total", "Secret rolls saved for the users");
 	private static final Pattern GAMESYSTEM_ROOM_PAIR_REGEXP = Pattern.compile("^(\\d*):(.*)");
 	private static final Pattern RESULT_VALUE_REGEXP = Pattern.compile("(\\d+)$");
-	private static final Pattern MULTIROLL_NUM_PREFIX = Pattern.compile("^(\\d+) ");
-	private static final Pattern MULTIROLL_TEXT_PREFIX = Pattern.compile("^\\[(.+)\\] ");
+	private static final int DEFAULT_MULTIROLL_PARALLELISM = 4;
 
 	public static final String HELP = "使い方\n"
 			+ "# ダイスボット一覧を確認する\n> bcdice list\n"
@@ -75,7 +91,13 @@ public class BCDiceCLI {
 			+ "# ダイスボット表を削除する\n"
 			+ "> bcdice admin PASSWORD removeDiceBot ダイスボット名\n"
 			+ "# ダイスボット表の一覧を表示する\n"
-			+ "> bcdice admin PASSWORD listDiceBot";
+			+ "> bcdice admin PASSWORD listDiceBot\n"
+			+ "# BCDice API サーバへの接続プールの状態を表示する\n"
+			+ "> bcdice admin PASSWORD poolStats\n"
+			+ "# Discord のイベント処理の状態を表示する\n"
+			+ "> bcdice admin PASSWORD dispatchStats\n"
+			+ "# ダイスを振る回数の制限の状態を表示する\n"
+			+ "> bcdice admin PASSWORD rateLimitStats";
 
 	private String getPassword() {
 		String env = System.getenv("BCDICE_PASSWORD");
@@ -118,7 +140,7 @@ public class BCDiceCLI {
 	public BCDiceCLI(String url) {
 		client = DiceClientFactory.getDiceClient(url);
 		originalDiceBotClient = new OriginalDiceBotClient();
-		savedMessage = new HashMap<String, List<String>>();
+		savedMessage = SecretRollStore.fromEnv();
 		password = getPassword();
 	}
 	
@@ -129,7 +151,7 @@ public class BCDiceCLI {
 	public BCDiceCLI(String url, boolean errorSenstive) {
 		client = DiceClientFactory.getDiceClient(url, errorSenstive);
 		originalDiceBotClient = new OriginalDiceBotClient();
-		savedMessage = new HashMap<String, List<String>>();
+		savedMessage = SecretRollStore.fromEnv();
 		password = getPassword();
 	}
 
@@ -141,7 +163,7 @@ public class BCDiceCLI {
 	public BCDiceCLI(List<String> urls, boolean errorSenstive) {
 		client = DiceClientFactory.getDiceClient(urls, errorSenstive);
 		originalDiceBotClient = new OriginalDiceBotClient();
-		savedMessage = new HashMap<String, List<String>>();
+		savedMessage = SecretRollStore.fromEnv();
 		password = getPassword();
 	}
 	
@@ -153,7 +175,7 @@ public class BCDiceCLI {
 		client = DiceClientFactory.getDiceClient(url);
 		client.setSystem(system);
 		originalDiceBotClient = new OriginalDiceBotClient();
-		savedMessage = new HashMap<String, List<String>>();
+		savedMessage = SecretRollStore.fromEnv();
 		password = getPassword();
 	}
 
@@ -161,7 +183,7 @@ public class BCDiceCLI {
 		client = DiceClientFactory.getDiceClient(urls, errorSensitive);
 		client.setSystem(system);
 		originalDiceBotClient = new OriginalDiceBotClient();
-		savedMessage = new HashMap<String, List<String>>();
+		savedMessage = SecretRollStore.fromEnv();
 		password = getPassword();
 	}
 
@@ -170,44 +192,57 @@ public class BCDiceCLI {
 	 * @return If the command is for roll dice command, true. If not false
 	 */
 	public boolean isRoll(String input) {
-		return ! (input.toLowerCase().startsWith("bcdice ") || input.toLowerCase().equals("bcdice"));
+		return ! MessageClassifier.isAdminCommand(input);
 	}
 
-	private boolean isShouldRoll(String input) {
-		if(! isSuppressed) { return true; }
-		if( rollCommand.isEmpty() ) {
-			return client.isDiceCommand(input);
-		} else {
-			return input.startsWith(rollCommand);
-		}
+	/**
+	 * @param message the message
+	 * @param channel the channel of the message
+	 * @return what the message is. Pass it to rollsAsync unless it's the admin command
+	 */
+	public MessageClassifier.Classification classify(String message, String channel) {
+		MessageClassifier.Classification classification = classifier.classify(message, channel, rollCommand, isSuppressed);
+		classifiedCounters[classification.getKind().ordinal()].increment();
+		return classification;
 	}
 
-	private String serachOriginalDicebot(String input) {
-		List<String> list = originalDiceBotClient.getDiceBotList();
-		for(String name : list) {
-			if(input.startsWith(name)) {return name;}
+	private static Counter[] newClassifiedCounters() {
+		MessageClassifier.Kind[] kinds = MessageClassifier.Kind.values();
+		Counter[] counters = new Counter[kinds.length];
+		for(MessageClassifier.Kind kind : kinds) {
+			counters[kind.ordinal()] = MetricsRegistry.getShared().counter("bcdice_messages_classified_total",
+					"Messages classified by the kind", "kind", kind.name().toLowerCase());
 		}
-		return "";
+		return counters;
 	}
 
-	private String isOriginalDicebot(String rawInput) {
-		if(! (rollCommand.isEmpty() || rawInput.startsWith(rollCommand))) {
-			return "";
-		}
-		return serachOriginalDicebot(rawInput.replaceFirst(rollCommand, "").trim());
+	private boolean isDiceCommand(String message, int start, int end, String channel) {
+		return client.isDiceCommand(message, start, end, channel);
+	}
+
+	private String findOriginalDiceBot(CharSequence input, int start, int end) {
+		return originalDiceBotClient.findDiceBot(input, start, end);
 	}
 
-	private DicerollResult rollOriginalDiceBot(String name) throws IOException {
+	private String serachOriginalDicebot(String input) {
+		return originalDiceBotClient.findDiceBot(input);
+	}
+
+	private CompletableFuture<DicerollResult> rollOriginalDiceBotAsync(String name) {
 		OriginalDiceBot diceBot;
-		DicerollResult rawRollResult;
+		String command;
 		logger.debug(String.format("ダイスボット [%s] を実行します", name));
+		originalDiceBotCounter.increment();
 		try {
 			diceBot = originalDiceBotClient.getDiceBot(name);
 		} catch (IOException e) {
-			throw new IOException(String.format("ダイスボット [%s] が取得できませんでした", name), e);
+			return AsyncUtil.failed(new IOException(String.format("ダイスボット [%s] が取得できませんでした", name), e));
 		}
-		try {
-			rawRollResult = client.rollDice(normalizeDiceCommand(diceBot.getCommand()));
+		command = normalizeDiceCommand(diceBot.getCommand());
+		return client.rollDiceAsync(command).handle((rawRollResult, e) -> {
+			if(e != null) {
+				throw new CompletionException(new IOException("ダイスを振るのに失敗しました", AsyncUtil.unwrap(e)));
+			}
 			Matcher matchResult = RESULT_VALUE_REGEXP.matcher(rawRollResult.getText());
 			if(matchResult.find()) {
 				String rollResult = diceBot.getResultAsShow(matchResult.group(1));
@@ -215,72 +250,178 @@ public class BCDiceCLI {
 			} else {
 				return new DicerollResult("", "", false, false);
 			}
-		} catch (IOException e) {
-			throw new IOException("ダイスを振るのに失敗しました", e);
-		}
+		});
 	}
 
+	/**
+	 * @param rawInput Dice roll command. It can have the multiroll prefix.
+	 * @param channel
+	 * @return results as DicerollResult list.
+	 * @throws IOException When command failed
+	 */
 	public List<DicerollResult> rolls(String rawInput, String channel) throws IOException {
+		return AsyncUtil.await(rollsAsync(rawInput, channel));
+	}
+
+	/**
+	 * Non-blocking version of rolls.
+	 * @param rawInput Dice roll command. It can have the multiroll prefix.
+	 * @param channel
+	 * @return future of the results. It's completed with IOException when command failed
+	 */
+	public CompletableFuture<List<DicerollResult>> rollsAsync(String rawInput, String channel) {
+		return rollsAsync(classifier.classifyRoll(rawInput, channel, rollCommand, isSuppressed), channel);
+	}
+
+	/**
+	 * @param classification the message classified by classify
+	 * @param channel
+	 * @return future of the results. It's completed with IOException when command failed
+	 */
+	public CompletableFuture<List<DicerollResult>> rollsAsync(MessageClassifier.Classification classification, String channel) {
+		return rollsAsync(classification, channel, null);
+	}
+
+	/**
+	 * The rolls are limited by the rate limiter before any request is sent.
+	 * @param classification the message classified by classify
+	 * @param channel
+	 * @param userId the user who sent the message. If it's null, only the channel and the whole bot are limited
+	 * @return future of the results. It's completed with IOException when command failed
+	 * and with RateLimiter.RateLimitedException when too many dice are rolled
+	 */
+	public CompletableFuture<List<DicerollResult>> rollsAsync(MessageClassifier.Classification classification, String channel, String userId) {
 		List<DicerollResult> result = new ArrayList<DicerollResult>();
-		if(! (rollCommand.isEmpty() || rawInput.trim().startsWith(rollCommand))) {
-			return result;
+		if(classification.isTooMany()) {
+			return AsyncUtil.failed(new IOException(String.format("1度にダイスを振れる回数は20回までです（%d回振ろうとしていました）", classification.getCount())));
 		}
-		String input = rawInput.replaceFirst(rollCommand, "").trim();
-		Matcher isNumMatcher = MULTIROLL_NUM_PREFIX.matcher(input);
-		if(isNumMatcher.find()) {
-			String rawCount = isNumMatcher.group(1);
-			int times = Integer.parseInt(rawCount);
-			String requiredCommand = String.format("%s%s" , rollCommand, input.replaceFirst(rawCount, "").trim());
-			if(times > 20) {
-				if( isOriginalDicebot(requiredCommand).isEmpty() && (! isShouldRoll(requiredCommand)) ) {
-					return result;
-				} else {
-					throw new IOException(String.format("1度にダイスを振れる回数は20回までです（%d回振ろうとしていました）", times));
+		try {
+			rateLimiter.acquire(userId, channel, classification.getCount());
+		} catch (RateLimiter.RateLimitedException e) {
+			logger.debug(String.format("USERID: %s CHANNEL: %s is rate limited", userId, channel));
+			return AsyncUtil.failed(e);
+		}
+		switch(classification.getKind()) {
+		case MULTIROLL_COUNT:
+		case MULTIROLL_TARGETS:
+			return rollRepeatedly(classification.getEach(), channel, classification.getLabels());
+		case ORIGINAL_DICEBOT:
+		case DICE_COMMAND:
+			return rollAsync(classification, channel).thenApply(tmpResult -> {
+				if(tmpResult.isRolled() || tmpResult.isError()) {
+					result.add(tmpResult);
 				}
-			}
-			for(int i = 0; i < times; i++) {
-				DicerollResult tmpResult = roll(requiredCommand, channel);
-				logger.debug(tmpResult.toString());
-				result.add( new DicerollResult(
-								tmpResult.getText(),
-								String.format("%s: %s", i + 1, tmpResult.getSystem()),
-								tmpResult.isSecret(),
-								tmpResult.isRolled(),
-								tmpResult.isError()
-						));
-			}
-			return result;
+				return result;
+			});
+		default:
+			return CompletableFuture.completedFuture(result);
 		}
+	}
 
-		Matcher isTextMatcher = MULTIROLL_TEXT_PREFIX.matcher(input);
-		if(isTextMatcher.find()) {
-			String rawTargetList = isTextMatcher.group(1);
-			String[] targetList = rawTargetList.split(",");
-			String requiredCommand = String.format("%s%s" , rollCommand, input.replaceFirst(isTextMatcher.group(), "").trim());
-			if(targetList.length > 20) {
-				if( isOriginalDicebot(requiredCommand).isEmpty() && (! isShouldRoll(requiredCommand)) ) {
-					return result;
-				} else {
-					throw new IOException(String.format("1度にダイスを振れる回数は20回までです（%d回振ろうとしていました）", targetList.length));
+	/**
+	 * Roll the same command once for each label. The label is added to the head of the system name.
+	 * In the repeat mode, the command is sent as one BCDice repeat command first.
+	 * @param requiredCommand dice command
+	 * @param channel
+	 * @param labels
+	 * @return future of the labeled results
+	 */
+	private CompletableFuture<List<DicerollResult>> rollRepeatedly(MessageClassifier.Classification requiredCommand, String channel, List<String> labels) {
+		if( multirollAsRepeat && labels.size() > 1 &&
+			requiredCommand.getKind() == MessageClassifier.Kind.DICE_COMMAND) {
+			return rollAsRepeatCommand(requiredCommand, channel, labels).thenCompose(result -> {
+				if(result == null) {
+					return rollInParallel(requiredCommand, channel, labels);
 				}
+				return CompletableFuture.completedFuture(result);
+			});
+		}
+		return rollInParallel(requiredCommand, channel, labels);
+	}
+
+	/**
+	 * @return future of the labeled results. If the repeat result can't be split, it's completed with null.
+	 */
+	private CompletableFuture<List<DicerollResult>> rollAsRepeatCommand(MessageClassifier.Classification requiredCommand, String channel, List<String> labels) {
+		String input = requiredCommand.getCommand();
+		String repeatCommand = MultirollRepeatTranslator.toRepeatCommand(labels.size(), input);
+		logger.debug(String.format("bot send repeat command to server: %s", repeatCommand));
+		String normalized = normalizeDiceCommand(repeatCommand);
+		return client.rollDiceAsync(normalized, channel).handle((rawResult, e) -> {
+			if(e != null) {
+				logger.debug(String.format("Repeat command [%s] is failed. Each roll is sent", repeatCommand), AsyncUtil.unwrap(e));
+				return null;
 			}
-			for(String target: targetList) {
-				DicerollResult tmpResult = roll(requiredCommand, channel);
-				result.add( new DicerollResult(
-								tmpResult.getText(),
-								String.format("%s: %s", target, tmpResult.getSystem()),
-								tmpResult.isSecret(),
-								tmpResult.isRolled(),
-								tmpResult.isError()
-						));
+			List<String> texts = MultirollRepeatTranslator.split(rawResult, labels.size());
+			if(texts == null) {
+				logger.debug(String.format("Repeat command [%s] result can't be split. Each roll is sent", repeatCommand));
+				return null;
+			}
+			List<DicerollResult> result = new ArrayList<DicerollResult>();
+			for(int i = 0; i < texts.size(); i++) {
+				DicerollResult split = new DicerollResult(texts.get(i), rawResult.getSystem(), rawResult.isSecret(), true);
+				result.add(withLabel(split, labels.get(i)));
 			}
 			return result;
+		});
+	}
+
+	/**
+	 * At most multirollParallelism requests are sent to the dice server at once.
+	 * The results keep the order of the labels.
+	 */
+	private CompletableFuture<List<DicerollResult>> rollInParallel(MessageClassifier.Classification requiredCommand, String channel, List<String> labels) {
+		DicerollResult[] results = new DicerollResult[labels.size()];
+		AtomicInteger cursor = new AtomicInteger(0);
+		int workerCount = Math.min(multirollParallelism, labels.size());
+		CompletableFuture<?>[] workers = new CompletableFuture<?>[workerCount];
+		for(int i = 0; i < workerCount; i++) {
+			workers[i] = rollNext(requiredCommand, channel, labels, results, cursor);
 		}
-		DicerollResult tmpResult = roll(rawInput, channel);
-		if(tmpResult.isRolled() || tmpResult.isError()) {
-			result.add(tmpResult);
-		} 
-		return result;
+		return CompletableFuture.allOf(workers).thenApply(v -> new ArrayList<DicerollResult>(Arrays.asList(results)));
+	}
+
+	private CompletableFuture<Void> rollNext(MessageClassifier.Classification requiredCommand, String channel, List<String> labels, DicerollResult[] results, AtomicInteger cursor) {
+		int index = cursor.getAndIncrement();
+		if(index >= labels.size()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return rollAsync(requiredCommand, channel).thenCompose(tmpResult -> {
+			logger.debug(tmpResult.toString());
+			results[index] = withLabel(tmpResult, labels.get(index));
+			return rollNext(requiredCommand, channel, labels, results, cursor);
+		});
+	}
+
+	private DicerollResult withLabel(DicerollResult tmpResult, String label) {
+		return new DicerollResult(
+				tmpResult.getText(),
+				String.format("%s: %s", label, tmpResult.getSystem()),
+				tmpResult.isSecret(),
+				tmpResult.isRolled(),
+				tmpResult.isError()
+		);
+	}
+
+	/**
+	 * @param parallelism max count of the requests sent at once by one multiroll command
+	 */
+	public void setMultirollParallelism(int parallelism) {
+		multirollParallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * @param limiter the limiter consulted before the rolls are sent
+	 */
+	public void setRateLimiter(RateLimiter limiter) {
+		rateLimiter = limiter;
+	}
+
+	/**
+	 * @param asRepeat If true, multiroll is sent as one BCDice repeat command (xN) when it's possible
+	 */
+	public void setMultirollAsRepeat(boolean asRepeat) {
+		multirollAsRepeat = asRepeat;
 	}
 
 	/**
@@ -290,16 +431,28 @@ public class BCDiceCLI {
 	 * @throws IOException When command failed
 	 */
 	public DicerollResult roll(String rawInput, String channel) throws IOException {
-		String originalDiceBot = isOriginalDicebot(rawInput);
-		if(! originalDiceBot.isEmpty()) {
-			return rollOriginalDiceBot(originalDiceBot);
-		}
-		if(isShouldRoll(rawInput)) {
-			String input = rawInput.replaceFirst(rollCommand, "").trim();
-			logger.debug(String.format("bot send command to server: %s", input));
-			return client.rollDiceWithChannel(normalizeDiceCommand(input), channel);
-		} else {
-			return new DicerollResult("", "", false, false);
+		return AsyncUtil.await(rollAsync(rawInput, channel));
+	}
+
+	/**
+	 * Non-blocking version of roll.
+	 * @param rawInput Dice roll command
+	 * @param channel
+	 * @return future of the result. It's completed with IOException when command failed
+	 */
+	public CompletableFuture<DicerollResult> rollAsync(String rawInput, String channel) {
+		return rollAsync(classifier.classifyCommand(rawInput, channel, rollCommand, isSuppressed), channel);
+	}
+
+	private CompletableFuture<DicerollResult> rollAsync(MessageClassifier.Classification classification, String channel) {
+		switch(classification.getKind()) {
+		case ORIGINAL_DICEBOT:
+			return rollOriginalDiceBotAsync(classification.getCommand());
+		case DICE_COMMAND:
+			logger.debug(String.format("bot send command to server: %s", classification.getCommand()));
+			return client.rollDiceAsync(normalizeDiceCommand(classification.getCommand()), channel);
+		default:
+			return CompletableFuture.completedFuture(new DicerollResult("", "", false, false));
 		}
 	}
 
@@ -366,16 +519,8 @@ public class BCDiceCLI {
 			}
 		}
 		if(command[1].equals("list")) {
-			StringBuilder sb = new StringBuilder("[DiceBot List]");
 			try {
-				client.getSystems().getSystemList().forEach(dice->{
-					sb.append("\n" + dice);
-					if(sb.length() > 1000) {
-						resultList.add(sb.toString());
-						sb.delete(0, sb.length());
-					}
-				});
-				resultList.add(sb.toString());
+				resultList.addAll(getSystemListMessage(client.getSystems()));
 				return resultList;
 			} catch (IOException e) {
 				resultList.add(e.getMessage());
@@ -412,10 +557,10 @@ public class BCDiceCLI {
 		if(command[1].equals("status")) {
 			try {
 				VersionInfo vi = client.getVersion();
-				resultList.add(client.toString(channel) + "(API v." + vi.getApiVersion() + " / BCDice v." + vi.getDiceVersion() + ")");
+				resultList.add(client.toString(channel) + "(API v." + vi.getApiVersion() + " / BCDice v." + vi.getDiceVersion() + ")" + getServerStatusText());
 				return resultList;
 			} catch (IOException e) {
-				resultList.add(client.toString(channel) + "(バージョン情報の取得に失敗しました)");
+				resultList.add(client.toString(channel) + "(バージョン情報の取得に失敗しました)" + getServerStatusText());
 				return resultList;
 			}
 		}
@@ -431,6 +576,56 @@ public class BCDiceCLI {
 		return resultList;
 	}
 
+	/**
+	 * The client caches the system list, so the message is made again only when the list is changed.
+	 * @param systems the system list
+	 * @return the system list split into the messages
+	 */
+	private List<String> getSystemListMessage(SystemList systems) {
+		SystemListMessage cached = systemListMessage;
+		if(cached != null && cached.source == systems) {
+			return cached.messages;
+		}
+		List<String> messages = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder("[DiceBot List]");
+		systems.getSystemList().forEach(dice->{
+			sb.append("\n" + dice);
+			if(sb.length() > 1000) {
+				messages.add(sb.toString());
+				sb.delete(0, sb.length());
+			}
+		});
+		messages.add(sb.toString());
+		systemListMessage = new SystemListMessage(systems, Collections.unmodifiableList(messages));
+		return systemListMessage.messages;
+	}
+
+	private static class SystemListMessage {
+		private final SystemList source;
+		private final List<String> messages;
+
+		private SystemListMessage(SystemList source, List<String> messages) {
+			this.source = source;
+			this.messages = messages;
+		}
+	}
+
+	/**
+	 * Restore the system of each channel from the store and save the later changes to it.
+	 * Call it before the bot starts to receive the messages.
+	 * @param store the store
+	 * @throws IOException When the store can't be read
+	 */
+	public void useChannelSystemStore(ChannelSystemStore store) throws IOException {
+		store.open(client.getChannelSystemRegistry());
+		client.warmSystemInfoCache();
+	}
+
+	private String getServerStatusText() {
+		String serverStatus = client.getServerStatus();
+		return serverStatus.isEmpty() ? "" : "\n" + serverStatus;
+	}
+
 	private List<String> adminCommand(String[] command, String tmpInput, List<MessageAttachment> attachements) {
 		List<String> resultList = new ArrayList<String>();
 		if(command[2].equals("help")) {
@@ -486,6 +681,7 @@ public class BCDiceCLI {
 					resultList.add("Room" + matchResult.group(1) + " -> " + matchResult.group(2));
 				}
 			}
+			client.warmSystemInfoCache();
 			return resultList;
 		}
 
@@ -563,6 +759,21 @@ public class BCDiceCLI {
 			return resultList;
 		}
 
+		if(command[3].equals("poolStats")) {
+			resultList.add(HttpConnectionPool.getShared().getStatsText());
+			return resultList;
+		}
+
+		if(command[3].equals("dispatchStats")) {
+			resultList.add(ChannelDispatcher.getShared().getStatsText());
+			return resultList;
+		}
+
+		if(command[3].equals("rateLimitStats")) {
+			resultList.add(rateLimiter.getStatsText());
+			return resultList;
+		}
+
 		resultList.add(HELP_ADMIN);
 		return resultList;
 	}
@@ -574,13 +785,18 @@ public class BCDiceCLI {
 	 * @return The stacked message index
 	 */
 	private int saveMessage(String id, String message) {
-		List<String> msgList = savedMessage.get(id);
-		if(msgList == null) {
-			msgList = new ArrayList<String>();
-			savedMessage.put(id, msgList);
-		}
-		msgList.add(message);
-		return msgList.size();
+		return savedMessage.save(id, message);
+	}
+
+	/**
+	 * Keep the result of the secret roll so that the user can recall it by "bcdice load N".
+	 * @param userId user unique id
+	 * @param result the secret roll result
+	 * @return The index to recall the result
+	 */
+	public int saveSecretRoll(String userId, DicerollResult result) {
+		secretRollCounter.increment();
+		return saveMessage(userId, result.getSystem() + result.getText());
 	}
 
 	/**
@@ -591,12 +807,14 @@ public class BCDiceCLI {
 	 * @throws IOException When failed to get message
 	 */
 	private String getMessage(String id, int index) throws IOException {
-		try {
-			List<String> list = savedMessage.get(id);
-			return list.get(index - 1);
-		} catch (Exception e) {
-			throw new IOException(e.getMessage(), e);
-		}
+		return savedMessage.get(id, index);
+	}
+
+	/**
+	 * @param store the store for the results of the secret rolls
+	 */
+	public void setSecretRollStore(SecretRollStore store) {
+		savedMessage = store;
 	}
 
 	/**
@@ -604,20 +822,9 @@ public class BCDiceCLI {
 	 * See also https://github.com/Shunshun94/discord-bcdicebot/pull/10
 	 * @param command raw command
 	 * @return Normalized command.
-	 * @throws IOException 
 	 */
-	private String normalizeDiceCommand(String rawCommand) throws IOException {
-		String command = rawCommand;
-		try {
-			for(String replaceTarget: REMOVE_WHITESPACE_TARGETS) {
-				command = command.replaceAll("[\\s　]*[" + replaceTarget + "]+[\\s　]*", replaceTarget);
-			}
-			command = URLEncoder.encode(command.replaceAll(" ", "%20"), "UTF-8");
-			command = command.replaceAll("%2520", "%20").replaceAll("%7E", "~");
-			return command;
-		} catch (UnsupportedEncodingException e) {
-			throw new IOException("Failed to encode [" + rawCommand + "]", e);
-		}
+	private String normalizeDiceCommand(String rawCommand) {
+		return commandEncoder.normalize(rawCommand);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,234 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.AsyncUtil;
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+import com.hiyoko.discord.bot.BCDice.Metrics.Histogram;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
+
+/**
+ * Run the work for the Discord messages out of the Javacord listener threads.
+ * The channels run in parallel, but the messages in one channel are handled and posted in order.
+ * The work always runs in the executor, never in the thread which posted the previous message.
+ * @author Shunshun94
+ *
+ */
+public class ChannelDispatcher {
+	private static final Logger logger = LoggerFactory.getLogger(ChannelDispatcher.class);
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+	private static ChannelDispatcher shared;
+	private final ExecutorService executor;
+	private final String mode;
+	// messages dispatched but not posted yet
+	private final Semaphore pending;
+	private final int maxPending;
+	// the last post of each channel. The channel is removed when its last post is done.
+	private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<String, CompletableFuture<Void>>();
+	private final AtomicInteger queued = new AtomicInteger(0);
+	private final LongAdder started = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong(0);
+	private final Histogram waitHistogram = new Histogram();
+
+	/**
+	 * @param executor the executor of the works. It must accept maxPending works at once
+	 * @param mode the description of the executor for the stats
+	 * @param maxPending max count of the messages dispatched but not posted yet.
+	 * When it's reached, dispatch waits in the listener thread, so that Discord events are not read faster than they are handled
+	 */
+	public ChannelDispatcher(ExecutorService executor, String mode, int maxPending) {
+		this.executor = executor;
+		this.mode = mode;
+		this.maxPending = Math.max(1, maxPending);
+		this.pending = new Semaphore(this.maxPending);
+	}
+
+	/**
+	 * @param threads count of the threads
+	 * @param queueSize max count of the waiting works
+	 * @return the dispatcher with the bounded thread pool. It keeps threads + queueSize messages at most
+	 */
+	public static ChannelDispatcher withThreadPool(int threads, int queueSize) {
+		AtomicInteger count = new AtomicInteger(0);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), r -> {
+					Thread thread = new Thread(r, "bcdice-dispatch-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return new ChannelDispatcher(pool, String.format("pool(%d threads, queue %d)", threads, queueSize), threads + Math.max(1, queueSize));
+	}
+
+	/**
+	 * @param maxPending max count of the messages dispatched but not posted yet
+	 * @return the dispatcher with the virtual threads. If the JDK doesn't have them, null
+	 */
+	public static ChannelDispatcher withVirtualThreads(int maxPending) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return new ChannelDispatcher(executor, String.format("virtual threads(max %d messages)", maxPending), maxPending);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The dispatcher configured by BCDICE_DISPATCH_VIRTUAL (default on), BCDICE_DISPATCH_THREADS (default 16)
+	 * and BCDICE_DISPATCH_QUEUE (default 1000). The thread pool is used when the virtual threads are not available.
+	 * With the virtual threads, BCDICE_DISPATCH_QUEUE is the max count of the messages not posted yet.
+	 * @return the dispatcher shared in this process
+	 */
+	public static synchronized ChannelDispatcher getShared() {
+		if(shared == null) {
+			if(EnvUtil.getBoolean("BCDICE_DISPATCH_VIRTUAL", true)) {
+				shared = withVirtualThreads(EnvUtil.getInt("BCDICE_DISPATCH_QUEUE", 1000));
+			}
+			if(shared == null) {
+				shared = withThreadPool(EnvUtil.getInt("BCDICE_DISPATCH_THREADS", 16), EnvUtil.getInt("BCDICE_DISPATCH_QUEUE", 1000));
+			}
+			logger.info("Discord events are handled by " + shared.mode);
+			shared.registerMetrics(MetricsRegistry.getShared());
+		}
+		return shared;
+	}
+
+	/**
+	 * Run the work in the executor after the previous message of the channel is posted, and post its result.
+	 * The messages in one channel are handled one by one as Javacord delivered them,
+	 * so "bcdice set" or "bcdice load" sees the changes of the previous messages. The channels run in parallel.
+	 * It waits while maxPending messages are not posted yet. Call it from the listener thread, not from the work or the post.
+	 * @param channel the channel of the message
+	 * @param work the work for the message. It's called in the executor
+	 * @param post called with the result of the work or the error
+	 * @return future completed when the result is posted
+	 */
+	public <T> CompletableFuture<Void> dispatch(String channel, Supplier<CompletableFuture<T>> work, BiConsumer<T, Throwable> post) {
+		pending.acquireUninterruptibly();
+		long enqueued = System.nanoTime();
+		queued.incrementAndGet();
+		CompletableFuture<Void> posted = new CompletableFuture<Void>();
+		// Only the tail is swapped in the map. The work and the post never run in the lock of the map.
+		CompletableFuture<Void> previous = tails.put(channel, posted);
+		(previous == null ? DONE : previous).whenComplete((v, e) -> start(channel, enqueued, work, post, posted));
+		return posted;
+	}
+
+	/**
+	 * It's called by the thread which posted the previous message, so it only hands the work to the executor.
+	 * The executor doesn't run the work in the caller, because the pending messages are fewer than it accepts.
+	 */
+	private <T> void start(String channel, long enqueued, Supplier<CompletableFuture<T>> work, BiConsumer<T, Throwable> post, CompletableFuture<Void> posted) {
+		try {
+			executor.execute(() -> {
+				onStart(enqueued);
+				CompletableFuture<T> result;
+				try {
+					result = work.get();
+				} catch (RuntimeException e) {
+					result = AsyncUtil.failed(e);
+				}
+				result.whenComplete((value, error) -> post(channel, post, value, error, posted));
+			});
+		} catch (RejectedExecutionException e) {
+			// the executor is shut down or accepts fewer works than maxPending
+			queued.decrementAndGet();
+			post(channel, post, null, e, posted);
+		}
+	}
+
+	private <T> void post(String channel, BiConsumer<T, Throwable> post, T value, Throwable error, CompletableFuture<Void> posted) {
+		try {
+			post.accept(value, error == null ? null : AsyncUtil.unwrap(error));
+		} catch (RuntimeException e) {
+			logger.warn("Failed to post the result to " + channel, e);
+		} finally {
+			// If no message came after this one, the channel is forgotten
+			tails.remove(channel, posted);
+			pending.release();
+			posted.complete(null);
+		}
+	}
+
+	private void onStart(long enqueued) {
+		queued.decrementAndGet();
+		long wait = System.nanoTime() - enqueued;
+		started.increment();
+		waitNanos.add(wait);
+		maxWaitNanos.accumulateAndGet(wait, Math::max);
+		waitHistogram.observeNanos(wait);
+	}
+
+	/**
+	 * Publish the queue depth and the wait time.
+	 */
+	public void registerMetrics(MetricsRegistry registry) {
+		registry.gauge("bcdice_dispatch_queue_depth", "Discord events waiting for the previous message of the channel or the thread", this::getQueueDepth);
+		registry.gauge("bcdice_dispatch_active_channels", "Channels which have results not posted yet", this::getActiveChannelCount);
+		registry.register("bcdice_dispatch_wait_seconds", "Time the Discord events waited for the previous message of the channel and the thread", waitHistogram);
+	}
+
+	/**
+	 * @return count of the works waiting for the previous message of the channel or the thread
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 * @return count of the started works
+	 */
+	public long getStartedCount() {
+		return started.sum();
+	}
+
+	/**
+	 * @return total nanoseconds which the started works waited for the thread
+	 */
+	public long getTotalWaitNanos() {
+		return waitNanos.sum();
+	}
+
+	public long getMaxWaitNanos() {
+		return maxWaitNanos.get();
+	}
+
+	/**
+	 * @return count of the channels which have results not posted yet
+	 */
+	public int getActiveChannelCount() {
+		return tails.size();
+	}
+
+	/**
+	 * @return count of the messages dispatched but not posted yet
+	 */
+	public int getPendingCount() {
+		return maxPending - pending.availablePermits();
+	}
+
+	public String getStatsText() {
+		long count = getStartedCount();
+		return String.format("[Dispatcher] %s / queued: %d / started: %d / wait avg: %.2f ms, max: %.2f ms / active channels: %d / pending: %d of %d",
+				mode, getQueueDepth(), count, count == 0 ? 0 : getTotalWaitNanos() / 1000000.0 / count,
+				getMaxWaitNanos() / 1000000.0, getActiveChannelCount(), getPendingCount(), maxPending);
+	}
+}
@@ -0,0 +1,125 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One logical request to BCDice-API including its retries.
+ * It can be cancelled when the hedged request answers first.
+ * @author Shunshun94
+ *
+ */
+class ApiRequest {
+	private final String path;
+	private final String api;
+	private final CompletableFuture<String> result = new CompletableFuture<String>();
+	private volatile Attempt current;
+	private volatile boolean cancelled = false;
+
+	ApiRequest(String path) {
+		this.path = path;
+		int query = path.indexOf('?');
+		this.api = query < 0 ? path : path.substring(0, query);
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the path without the query
+	 */
+	String getApi() {
+		return api;
+	}
+
+	CompletableFuture<String> getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the server of the latest attempt
+	 */
+	Endpoint getEndpoint() {
+		Attempt attempt = current;
+		return attempt == null ? null : attempt.endpoint;
+	}
+
+	/**
+	 * Call it just before the request is sent to the server.
+	 * @return the attempt to finish when the request is answered or failed
+	 */
+	Attempt start(Endpoint endpoint) {
+		Attempt attempt = new Attempt(endpoint);
+		current = attempt;
+		return attempt;
+	}
+
+	void sent(Attempt attempt, Future<?> inFlight) {
+		attempt.inFlight = inFlight;
+		if(cancelled) {
+			attempt.cancelRequest();
+		}
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stop the request. No more retry is scheduled and the result is ignored.
+	 */
+	void cancel() {
+		cancelled = true;
+		Attempt attempt = current;
+		if(attempt != null) {
+			attempt.cancelRequest();
+		}
+	}
+
+	/**
+	 * One request sent to a server. Its endpoint is finished only once,
+	 * by the callback of the response or by cancel when the callback never runs.
+	 */
+	static class Attempt {
+		private final Endpoint endpoint;
+		private final long startedNanos;
+		private final AtomicBoolean finished = new AtomicBoolean(false);
+		private volatile Future<?> inFlight;
+
+		private Attempt(Endpoint endpoint) {
+			this.endpoint = endpoint;
+			this.startedNanos = endpoint.start();
+		}
+
+		long getStartedNanos() {
+			return startedNanos;
+		}
+
+		/**
+		 * @param success If the server answered correctly, true
+		 */
+		void finish(boolean success) {
+			if(finished.compareAndSet(false, true)) {
+				endpoint.finish(startedNanos, success);
+			}
+		}
+
+		void cancel() {
+			if(finished.compareAndSet(false, true)) {
+				endpoint.cancel(startedNanos);
+			}
+		}
+
+		/**
+		 * If the request is cancelled before the executor runs it, neither callback is called.
+		 */
+		private void cancelRequest() {
+			Future<?> request = inFlight;
+			if(request != null && request.cancel(true)) {
+				cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for the CompletableFuture based DiceClient API.
+ * Java 8 lacks CompletableFuture.failedFuture, so it lives here.
+ * @author Shunshun94
+ *
+ */
+public class AsyncUtil {
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "bcdice-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private AsyncUtil() {}
+
+	/**
+	 * Run the task later without blocking the calling thread.
+	 * The task should be short, heavy work should be passed to another executor.
+	 * @param delayMillis delay in milliseconds
+	 * @param task the task
+	 * @return handle to cancel the task
+	 */
+	public static ScheduledFuture<?> schedule(long delayMillis, Runnable task) {
+		return SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param e the cause
+	 * @return future which is already completed with the given exception
+	 */
+	public static <T> CompletableFuture<T> failed(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Unwrap CompletionException / ExecutionException made by the future chain.
+	 * @param e thrown exception
+	 * @return the original cause
+	 */
+	public static Throwable unwrap(Throwable e) {
+		Throwable current = e;
+		while((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+			current = current.getCause();
+		}
+		return current;
+	}
+
+	/**
+	 * Wait for the future from the synchronous API.
+	 * @param future target future
+	 * @return the result of the future
+	 * @throws IOException When the future is completed with an exception
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Waiting for the dice server is interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = unwrap(e);
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+}
@@ -1,19 +1,34 @@
 package com.hiyoko.discord.bot.BCDice.DiceClient;
 
+import com.hiyoko.discord.bot.BCDice.Metrics.Counter;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
 import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
 import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
 import com.hiyoko.discord.bot.BCDice.dto.SystemList;
 import com.hiyoko.discord.bot.BCDice.dto.VersionInfo;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 /**
@@ -22,29 +37,49 @@ import java.util.regex.Pattern;
  *
  */
 public class BCDiceClient implements DiceClient {
-	private int urlCursor = 0;
-	private List<String> urls = new ArrayList<String>();
+	private volatile int urlCursor = 0;
+	private final List<Endpoint> endpoints = new CopyOnWriteArrayList<Endpoint>();
+	private EndpointSelector endpointSelector = EndpointSelectorFactory.getEndpointSelector();
+	private RetryPolicy retryPolicy = RetryPolicy.fromEnv();
+	private HedgePolicy hedgePolicy = HedgePolicy.fromEnv();
+	private final RefreshingCache<SystemList> systemsCache = new RefreshingCache<SystemList>("system list",
+			EnvUtil.getLong("BCDICE_SYSTEMS_CACHE_TTL", 3600) * 1000, System::currentTimeMillis);
+	private volatile String lastVersion = null;
+	private volatile long versionCheckMillis = EnvUtil.getLong("BCDICE_VERSION_CHECK_INTERVAL", 600) * 1000;
+	private final AtomicLong versionCheckedAt = new AtomicLong(0);
+	private final SystemInfoCache systemInfoCache = new SystemInfoCache();
+	private final CommandPrefilter commandPrefilter = new CommandPrefilter();
+	private final NonCommandCache nonCommandCache = new NonCommandCache();
+	private final SingleFlight metadataRequests = new SingleFlight();
+	private final MetricsRegistry metrics = MetricsRegistry.getShared();
+	private final Counter retryCounter = metrics.counter("bcdice_api_retries_total", "Requests to BCDice-API sent again after a failure");
+	private final Counter failoverCounter = metrics.counter("bcdice_api_failovers_total", "Times the primary BCDice-API server was changed to the next one");
+	// The systems whose prefilter is being compiled, and the time to try again after a failure
+	private final Map<String, Long> prefilterRetryAt = new ConcurrentHashMap<String, Long>();
+	private final Logger logger = LoggerFactory.getLogger(BCDiceClient.class);
 	private final Client client;
-	private final Map<String, String> system;
+	private final ChannelSystemRegistry system;
 	private final boolean errorSensitive;
 	private static final String DEFAULT_CHANNEL = "general";
+	private static final long PREFILTER_RETRY_MILLIS = 30 * 1000;
+	private static final String ERROR_DUMMY_JSON = "{\"ok\":false,\"reason\":\"error handling dummy data\"}";
 	private static final Pattern DICE_COMMAND_PATTERN = Pattern.compile("^[\\w\\+\\-#\\$@<>=\\.\\[\\]\\(\\)]+"); 
 
 	/**
 	 * @param bcDiceUrl BCDice-API server URL
 	 */
 	public BCDiceClient(String bcDiceUrl) {
-		urls.add(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/");
-		client = ClientBuilder.newBuilder().build();
-		system = new HashMap<String, String>();
+		endpoints.add(new Endpoint(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/"));
+		client = HttpConnectionPool.getShared().newClient();
+		system = new ChannelSystemRegistry();
 		system.put(DEFAULT_CHANNEL, "DiceBot");
 		errorSensitive = true;
 	}
 
 	public BCDiceClient(String bcDiceUrl, boolean es) {
-		urls.add(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/");
-		client = ClientBuilder.newBuilder().build();
-		system = new HashMap<String, String>();
+		endpoints.add(new Endpoint(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/"));
+		client = HttpConnectionPool.getShared().newClient();
+		system = new ChannelSystemRegistry();
 		system.put(DEFAULT_CHANNEL, "DiceBot");
 		errorSensitive = es;
 	}
@@ -52,89 +87,457 @@ public class BCDiceClient implements DiceClient {
 	public BCDiceClient(List<String> bcDiceUrls, boolean es) {
 		for(String bcDiceUrl : bcDiceUrls) {
 			// stream と collect だとあとから追加ができなくなるのでこれで追加
-			urls.add(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/");
+			endpoints.add(new Endpoint(bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/"));
 		}
-		client = ClientBuilder.newBuilder().build();
-		system = new HashMap<String, String>();
+		client = HttpConnectionPool.getShared().newClient();
+		system = new ChannelSystemRegistry();
 		system.put(DEFAULT_CHANNEL, "DiceBot");
 		errorSensitive = es;
 	}
 
-	private String getUrl(String path, int rtl) throws IOException {
-		Response response = null;
-		String targetUrl = urls.get(urlCursor) + path;
+	/**
+	 * Send one request. When it fails, the next request is scheduled by the retry policy.
+	 * @param request the logical request
+	 * @param attempt count of the requests including this one
+	 * @param avoid the server which should not be used if possible
+	 */
+	private void attempt(ApiRequest request, int attempt, Endpoint avoid) {
+		if(request.isCancelled()) {
+			return;
+		}
+		CompletableFuture<String> result = request.getResult();
+		List<Endpoint> available = getAvailableEndpoints();
+		if(available.isEmpty()) {
+			result.completeExceptionally(new IOException("All BCDice-API servers are unavailable now. Please try again later"));
+			return;
+		}
+		int primary = Math.max(0, available.indexOf(endpoints.get(urlCursor)));
+		Endpoint endpoint = endpointSelector.select(available, primary, avoid);
+		String targetUrl = endpoint.getUrl() + request.getPath();
+		ApiRequest.Attempt sending = request.start(endpoint);
+		long started = sending.getStartedNanos();
 		try {
-			response = client.target(targetUrl).request().get();
+			Future<Response> inFlight = client.target(targetUrl).request().async().get(new InvocationCallback<Response>() {
+				@Override
+				public void completed(Response response) {
+					sending.finish(response.getStatus() < 500);
+					recordRequest(endpoint, request, response.getStatus(), started);
+					if(request.isCancelled()) {
+						response.close();
+						return;
+					}
+					try {
+						handleResponse(response, request, attempt, endpoint, targetUrl);
+					} catch(Exception e) {
+						result.completeExceptionally(e);
+					}
+				}
+
+				@Override
+				public void failed(Throwable e) {
+					if(request.isCancelled()) {
+						sending.cancel();
+						return;
+					}
+					sending.finish(false);
+					recordRequest(endpoint, request, RequestMetrics.ERROR, started);
+					handleFailure(e, request, attempt, endpoint, targetUrl);
+				}
+			});
+			request.sent(sending, inFlight);
 		} catch(Exception e) {
-			if(response != null) {
-				response.close();
+			sending.finish(false);
+			recordRequest(endpoint, request, RequestMetrics.ERROR, started);
+			handleFailure(e, request, attempt, endpoint, targetUrl);
+		}
+	}
+
+	/**
+	 * @param status the HTTP status code. If no response is received, RequestMetrics.ERROR
+	 */
+	private void recordRequest(Endpoint endpoint, ApiRequest request, int status, long startedNanos) {
+		endpoint.getRequestMetrics(request.getApi(), metrics).record(status, startedNanos);
+	}
+
+	private void handleFailure(Throwable e, ApiRequest request, int attempt, Endpoint endpoint, String targetUrl) {
+		IOException error = new IOException(e.getMessage() + "(" + targetUrl + ")", e);
+		if(retryPolicy.isRetryableException(e)) {
+			retryOrFail(request, attempt, endpoint, error);
+		} else {
+			request.getResult().completeExceptionally(error);
+		}
+	}
+
+	private void handleResponse(Response response, ApiRequest request, int attempt, Endpoint endpoint, String targetUrl) {
+		CompletableFuture<String> result = request.getResult();
+		int status = response.getStatus();
+		if (! (status == Response.Status.OK.getStatusCode() || status == 400)) {
+			response.close();
+			if(! errorSensitive) {
+				result.complete(ERROR_DUMMY_JSON);
+				return;
 			}
-			if( rtl == 0 ) {
-				throw new IOException(e.getMessage() + "(" + targetUrl + ")", e);
+			IOException error = new IOException(String.format("[%s] %s", status, targetUrl));
+			boolean hasAlternative = endpoints.size() != 1;
+			if(retryPolicy.isRetryableStatus(status, hasAlternative)) {
+				if(hasAlternative) { // 5XX Error であれば かつ 予備 URL があれば
+					moveCursorFrom(endpoint);
+				}
+				retryOrFail(request, attempt, endpoint, error);
 			} else {
-				System.err.println(String.format("Failed to request to %s, %s, app will try %s", targetUrl, e.getMessage(), rtl));
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e1) {
-					throw new IOException("Waiting in retry is interrupted", e);
+				result.completeExceptionally(error);
+			}
+			return;
+		}
+		String body = response.readEntity(String.class);
+		response.close();
+		result.complete(body);
+	}
+
+	private void retryOrFail(ApiRequest request, int attempt, Endpoint endpoint, IOException error) {
+		if(request.isCancelled()) {
+			return;
+		}
+		if(! retryPolicy.tryRetry(attempt)) {
+			if(attempt < retryPolicy.getMaxAttempts()) {
+				logger.warn(String.format("Retry budget is exhausted. %s is not retried", error.getMessage()));
+			}
+			request.getResult().completeExceptionally(error);
+			return;
+		}
+		long delay = retryPolicy.getDelayMillis(attempt);
+		retryCounter.increment();
+		logger.warn(String.format("Failed to request: %s, app will retry in %dms (%d/%d) with dice server %s",
+				error.getMessage(), delay, attempt, retryPolicy.getMaxAttempts() - 1, endpoints.get(urlCursor).getUrl()));
+		AsyncUtil.schedule(delay, () -> attempt(request, attempt + 1, endpoint));
+	}
+
+	/**
+	 * Servers whose circuit is closed.
+	 * When the circuit of a server has been open long enough, a probe is sent to the server in background.
+	 */
+	private List<Endpoint> getAvailableEndpoints() {
+		List<Endpoint> available = new ArrayList<Endpoint>(endpoints.size());
+		for(Endpoint endpoint : endpoints) {
+			CircuitBreaker breaker = endpoint.getBreaker();
+			if(breaker.isAvailable()) {
+				available.add(endpoint);
+			} else if(breaker.tryStartProbe()) {
+				probe(endpoint);
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Send the lightweight request to the server in HALF_OPEN.
+	 * The result is recorded to the circuit breaker of the server.
+	 */
+	private void probe(Endpoint endpoint) {
+		long started = endpoint.start();
+		try {
+			client.target(endpoint.getUrl() + "v1/version").request().async().get(new InvocationCallback<Response>() {
+				@Override
+				public void completed(Response response) {
+					response.close();
+					endpoint.finish(started, response.getStatus() == Response.Status.OK.getStatusCode());
+				}
+
+				@Override
+				public void failed(Throwable e) {
+					endpoint.finish(started, false);
 				}
-				return getUrl(path, rtl - 1);
-			}
-		}
-		
-        if (! (response.getStatus() == Response.Status.OK.getStatusCode() || response.getStatus() == 400)) {
-        	response.close();
-        	if(errorSensitive) {
-            	String msg = String.format("[%s] %s", response.getStatus(), targetUrl);
-            	if(msg.startsWith("[5") && (urls.size() != 1) && (rtl > 0)) { // 5XX Error であれば かつ 予備 URL があれば
-            		urlCursor++;
-            		if(urls.size() <= urlCursor) {
-            			urlCursor = 0;
-            		}
-            		System.err.println(String.format("Failed to request to %s, %s, app will try %s with dice server %s",
-            				targetUrl,
-            				response.getStatus(),
-            				rtl,
-            				urls.get(urlCursor)));
-            		return getUrl(path, rtl - 1);
-            	}
-            	throw new IOException(msg);
-        	} else {
-        		return "{\"ok\":false,\"reason\":\"error handling dummy data\"}";
-        	}
-        }
-        String result = response.readEntity(String.class);
-        response.close();
-        return result;
+			});
+		} catch(Exception e) {
+			endpoint.finish(started, false);
+		}
+	}
+
+	/**
+	 * If the failed server is the primary, the next server becomes the primary.
+	 */
+	private synchronized void moveCursorFrom(Endpoint failed) {
+		if(endpoints.get(urlCursor) != failed) {
+			return;
+		}
+		urlCursor++;
+		if(endpoints.size() <= urlCursor) {
+			urlCursor = 0;
+		}
+		failoverCounter.increment();
 	}
 
 	/**
 	 * 
 	 * @param path the path to the called API command
-	 * @return the API called result as String
-	 * @throws IOException When access is failed
+	 * @return the API called result as future of String
+	 */
+	private CompletableFuture<String> getUrlAsync(String path) {
+		return startRequest(path, null).getResult();
+	}
+
+	private ApiRequest startRequest(String path, Endpoint avoid) {
+		ApiRequest request = new ApiRequest(path);
+		retryPolicy.onRequest();
+		attempt(request, 1, avoid);
+		return request;
+	}
+
+	/**
+	 * Send the request. If it isn't answered in the hedge delay, the same request is sent to another server.
+	 * The first successful answer is used and the other request is cancelled.
+	 * It's only for the requests which can be sent twice safely, as dice rolls.
+	 * @param path the path to the called API command
+	 * @return the API called result as future of String
+	 */
+	private CompletableFuture<String> getUrlHedgedAsync(String path) {
+		HedgePolicy policy = hedgePolicy;
+		if(! policy.isEnabled() || endpoints.size() < 2) {
+			return getUrlAsync(path);
+		}
+		policy.onRequest();
+		long started = System.nanoTime();
+		CompletableFuture<String> result = new CompletableFuture<String>();
+		ApiRequest first = startRequest(path, null);
+		AtomicReference<ApiRequest> second = new AtomicReference<ApiRequest>();
+		ScheduledFuture<?> timer = AsyncUtil.schedule(policy.getDelayMillis(), () -> {
+			synchronized(result) {
+				if(result.isDone() || first.getResult().isDone() || ! policy.tryHedge()) {
+					return;
+				}
+				logger.info(String.format("No answer in %dms. The same request is sent to another server: %s", policy.getDelayMillis(), path));
+				ApiRequest hedge = startRequest(path, first.getEndpoint());
+				second.set(hedge);
+				hedge.getResult().whenComplete((body, e) -> onHedgedResult(result, body, e, first, first.getResult()));
+			}
+		});
+		first.getResult().whenComplete((body, e) -> {
+			synchronized(result) {
+				timer.cancel(false);
+				ApiRequest hedge = second.get();
+				onHedgedResult(result, body, e, hedge, hedge == null ? null : hedge.getResult());
+			}
+		});
+		return result.whenComplete((body, e) -> {
+			if(e == null) {
+				policy.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+			}
+		});
+	}
+
+	/**
+	 * @param result the result of the hedged request
+	 * @param other the other request. If it's not sent, null
+	 * @param otherResult the result of the other request. If it's not sent, null
+	 */
+	private void onHedgedResult(CompletableFuture<String> result, String body, Throwable e, ApiRequest other, CompletableFuture<String> otherResult) {
+		if(e == null) {
+			if(result.complete(body) && other != null) {
+				other.cancel();
+			}
+			return;
+		}
+		if(otherResult == null) {
+			result.completeExceptionally(AsyncUtil.unwrap(e));
+			return;
+		}
+		// When both requests fail, the result fails.
+		otherResult.whenComplete((otherBody, otherError) -> {
+			if(otherError != null) {
+				result.completeExceptionally(AsyncUtil.unwrap(e));
+			}
+		});
+	}
+
+	/**
+	 * Parse the body in the future chain.
+	 * The parser can throw IOException, so it's not simple thenApply.
+	 */
+	private <T> CompletableFuture<T> parse(CompletableFuture<String> body, IOFunction<String, T> parser) {
+		return body.thenCompose(json -> {
+			try {
+				return CompletableFuture.completedFuture(parser.apply(json));
+			} catch (Exception e) {
+				return AsyncUtil.failed(e);
+			}
+		});
+	}
+
+	@FunctionalInterface
+	private interface IOFunction<T, R> {
+		R apply(T t) throws IOException;
+	}
+
+	/**
+	 * Concurrent calls share one request.
+	 */
+	public CompletableFuture<VersionInfo> getVersionAsync() {
+		return metadataRequests.execute("v1/version", () -> parse(getUrlAsync("v1/version"), VersionInfo::new).thenApply(version -> {
+			onVersion(version);
+			return version;
+		}));
+	}
+
+	/**
+	 * Ask the version in background if it's not asked for BCDICE_VERSION_CHECK_INTERVAL seconds,
+	 * so that the caches used for each message are dropped after BCDice-API is upgraded.
+	 */
+	private void checkVersion() {
+		long now = System.currentTimeMillis();
+		long checkedAt = versionCheckedAt.get();
+		if(now - checkedAt < versionCheckMillis || ! versionCheckedAt.compareAndSet(checkedAt, now)) {
+			return;
+		}
+		getVersionAsync().whenComplete((version, e) -> {
+			if(e != null) {
+				logger.debug("Failed to check the version of BCDice-API: " + AsyncUtil.unwrap(e).getMessage());
+			}
+		});
+	}
+
+	/**
+	 * When BCDice-API is upgraded, the cached data is dropped.
+	 */
+	private void onVersion(VersionInfo version) {
+		String current = version.toString();
+		String previous = lastVersion;
+		lastVersion = current;
+		if(previous != null && ! previous.equals(current)) {
+			logger.info(String.format("BCDice-API is updated (%s -> %s). The cache is cleared", previous, current));
+			invalidateCache();
+		}
+	}
+
+	/**
+	 * The system list is cached for BCDICE_SYSTEMS_CACHE_TTL seconds.
+	 * After that, the cached list is returned and the list is refreshed in background.
+	 */
+	public CompletableFuture<SystemList> getSystemsAsync() {
+		checkVersion();
+		return systemsCache.get(() -> parse(getUrlAsync("v1/systems"), SystemList::new));
+	}
+
+	/**
+	 * Drop the data cached from the current server.
 	 */
-	private String getUrl(String path) throws IOException {
-		return getUrl(path, 5);
+	public void invalidateCache() {
+		systemsCache.invalidate();
+		systemInfoCache.clear();
+		commandPrefilter.clear();
+		prefilterRetryAt.clear();
+		nonCommandCache.clear();
+		metadataRequests.clear();
+	}
+
+	/**
+	 * SystemInfo is cached for each server. "System not found" is also cached for a while.
+	 * Concurrent calls for the same system share one request.
+	 */
+	public CompletableFuture<SystemInfo> getSystemInfoAsync(String gameType) {
+		String server = endpoints.get(urlCursor).getUrl();
+		SystemInfoCache.Entry cached = systemInfoCache.get(server, gameType);
+		if(cached != null) {
+			return cached.isNotFound() ? AsyncUtil.failed(systemNotFound(gameType, null)) : CompletableFuture.completedFuture(cached.getInfo());
+		}
+		return metadataRequests.execute(server + "\nv1/systeminfo\n" + gameType, () -> requestSystemInfo(server, gameType));
+	}
+
+	private CompletableFuture<SystemInfo> requestSystemInfo(String server, String gameType) {
+		CompletableFuture<String> rawJson;
+		try {
+			rawJson = getUrlAsync("v1/systeminfo?system=" + URLEncoder.encode(gameType, "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			return AsyncUtil.failed(new IOException(e.getMessage(), e));
+		}
+		return parse(rawJson, json -> {
+			try {
+				// IOException should be thrown from getURL and SystemInfo constructor.
+				// I have to show which method throws the Exception.
+				SystemInfo info = new SystemInfo(json);
+				systemInfoCache.put(server, gameType, info);
+				return info;
+			} catch (IOException e) {
+				systemInfoCache.putNotFound(server, gameType);
+				throw systemNotFound(gameType, e);
+			}
+		});
+	}
+
+	private IOException systemNotFound(String gameType, IOException cause) {
+		return new IOException("System '" + gameType + "' is not found", cause);
+	}
+
+	/**
+	 * Load SystemInfo of the systems used in the channels in background, so that the first help is answered quickly.
+	 */
+	public void warmSystemInfoCache() {
+		String server = endpoints.get(urlCursor).getUrl();
+		for(String gameType : system.getSystems()) {
+			if(! systemInfoCache.contains(server, gameType)) {
+				getSystemInfoAsync(gameType);
+			}
+		}
+	}
+
+	/**
+	 * @return the requests of version and SystemInfo shared by the concurrent calls
+	 */
+	public SingleFlight getMetadataRequests() {
+		return metadataRequests;
+	}
+
+	/**
+	 * @return the cache of SystemInfo
+	 */
+	public SystemInfoCache getSystemInfoCache() {
+		return systemInfoCache;
+	}
+
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command, String channel) {
+		return rollDiceWithSystemAsync(command, getSystem(channel));
+	}
+
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command) {
+		return rollDiceWithSystemAsync(command, getSystem());
+	}
+
+	/**
+	 * The commands which BCDice-API answered as not a command are not sent again for a while.
+	 */
+	private CompletableFuture<DicerollResult> rollDiceWithSystemAsync(String command, String system) {
+		if(nonCommandCache.isNonCommand(system, command)) {
+			return CompletableFuture.completedFuture(new DicerollResult("", "", false, false));
+		}
+		CompletableFuture<String> rawJson = getUrlHedgedAsync("v1/diceroll?command=" + command + "&system=" + DiceCommandEncoder.encodeSystem(system));
+		return parse(rawJson, json -> {
+			DicerollResult result = new DicerollResult(json, system);
+			// the dummy data for the server error is not the answer of the server
+			if(! result.isRolled() && ! result.isError() && ! ERROR_DUMMY_JSON.equals(json)) {
+				nonCommandCache.put(system, command);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * @return the cache of the messages which are not commands
+	 */
+	public NonCommandCache getNonCommandCache() {
+		return nonCommandCache;
 	}
 
 	public VersionInfo getVersion() throws IOException {
-		return new VersionInfo(getUrl("v1/version"));
+		return AsyncUtil.await(getVersionAsync());
 	}
 
 	public SystemList getSystems() throws IOException {
-		return new SystemList(getUrl("v1/systems"));
+		return AsyncUtil.await(getSystemsAsync());
 	}
 
 	public SystemInfo getSystemInfo(String gameType) throws IOException {
-		String rawJson = getUrl("v1/systeminfo?system=" + URLEncoder.encode(gameType, "UTF-8"));
-		try {
-			// IOException should be thrown from getURL and SystemInfo constructor.
-			// I have to show which method throws the Exception.
-			return new SystemInfo(rawJson);
-		} catch (IOException e) {
-			throw new IOException("System '" + gameType + "' is not found", e);
-		}
+		return AsyncUtil.await(getSystemInfoAsync(gameType));
 	}
 
 
@@ -144,7 +547,7 @@ public class BCDiceClient implements DiceClient {
 	}
 	
 	public DicerollResult rollDice(String command, String system) throws IOException {
-		return new DicerollResult(getUrl("v1/diceroll?command=" + command + "&system=" + URLEncoder.encode(system, "UTF-8").replaceAll("%2520", "%20")), system);
+		return AsyncUtil.await(rollDiceWithSystemAsync(command, system));
 	}
 
 	public DicerollResult rollDice(String command) throws IOException {
@@ -175,28 +578,39 @@ public class BCDiceClient implements DiceClient {
 	}
 	
 	public String toString() {
-		return "[BCDiceClient] for " + urls.get(urlCursor) + " : " + system.get(DEFAULT_CHANNEL);
+		return "[BCDiceClient] for " + endpoints.get(urlCursor).getUrl() + " : " + system.get(DEFAULT_CHANNEL);
 	}
 
 	public String toString(String channel) {
-		return "[BCDiceClient] for " + urls.get(urlCursor) + " : " + getSystem(channel);
+		return "[BCDiceClient] for " + endpoints.get(urlCursor).getUrl() + " : " + getSystem(channel);
 	}
 
 	@Override
-	public void setDiceServer(String bcDiceUrl) {
+	public synchronized void setDiceServer(String bcDiceUrl) {
 		String tmp = bcDiceUrl.endsWith("/") ? bcDiceUrl : bcDiceUrl + "/";
-		for(int i = 0; i < urls.size(); i++) {
-			if(urls.get(i).equals(tmp) ) {
+		for(int i = 0; i < endpoints.size(); i++) {
+			if(endpoints.get(i).getUrl().equals(tmp) ) {
+				if(urlCursor != i) {
+					lastVersion = null;
+					invalidateCache();
+				}
 				urlCursor = i;
 				return;
 			}
 		}
-		urls.add(tmp);
-		urlCursor = urls.size() - 1;
+		endpoints.add(new Endpoint(tmp));
+		urlCursor = endpoints.size() - 1;
+		lastVersion = null;
+		invalidateCache();
 	}
 
 	@Override
 	public Map<String, String> getRoomsSystem() {
+		return system.snapshot();
+	}
+
+	@Override
+	public ChannelSystemRegistry getChannelSystemRegistry() {
 		return system;
 	}
 
@@ -207,11 +621,113 @@ public class BCDiceClient implements DiceClient {
 		return DICE_COMMAND_PATTERN.matcher(command).find();
 	}
 
+	/**
+	 * The prefixs of the system are used. Until SystemInfo of the system is loaded, the generic pattern is used.
+	 * The version of BCDice-API is also checked here, because it's called for each message.
+	 */
+	@Override
+	public boolean isDiceCommand(String command, String channel) {
+		return isDiceCommand(command, 0, command.length(), channel);
+	}
+
+	@Override
+	public boolean isDiceCommand(String message, int start, int end, String channel) {
+		if(message.startsWith("choice[", start)) {return true;}
+		checkVersion();
+		String gameType = getSystem(channel);
+		if(! commandPrefilter.isCompiled(gameType)) {
+			compilePrefilter(gameType);
+		}
+		return commandPrefilter.mayBeCommand(message, start, end, gameType);
+	}
+
+	/**
+	 * When SystemInfo can't be loaded, it's not requested again for PREFILTER_RETRY_MILLIS,
+	 * or each chat message during the outage sends a request.
+	 */
+	private void compilePrefilter(String gameType) {
+		Long retryAt = prefilterRetryAt.get(gameType);
+		if(retryAt == null) {
+			if(prefilterRetryAt.putIfAbsent(gameType, Long.MAX_VALUE) != null) {
+				return;
+			}
+		} else if(retryAt > System.currentTimeMillis() || ! prefilterRetryAt.replace(gameType, retryAt, Long.MAX_VALUE)) {
+			return;
+		}
+		getSystemInfoAsync(gameType).whenComplete((info, e) -> {
+			if(info != null) {
+				commandPrefilter.compile(gameType, info);
+				prefilterRetryAt.remove(gameType);
+			} else {
+				prefilterRetryAt.put(gameType, System.currentTimeMillis() + PREFILTER_RETRY_MILLIS);
+			}
+		});
+	}
+
+	/**
+	 * @return the filter which decides whether the message is sent to the server
+	 */
+	public CommandPrefilter getCommandPrefilter() {
+		return commandPrefilter;
+	}
+
 	public int getUrlCursor() {
 		return urlCursor;
 	}
 
 	public List<String> getDiceUrlList() {
+		List<String> urls = new ArrayList<String>();
+		for(Endpoint endpoint : endpoints) {
+			urls.add(endpoint.getUrl());
+		}
 		return urls;
 	}
+
+	/**
+	 * @return all servers with their observed latency and error rate
+	 */
+	public List<Endpoint> getEndpoints() {
+		return Collections.unmodifiableList(endpoints);
+	}
+
+	@Override
+	public String getServerStatus() {
+		StringBuilder sb = new StringBuilder();
+		for(Endpoint endpoint : endpoints) {
+			sb.append(endpoint.toString()).append("\n");
+		}
+		sb.append(systemInfoCache.getStatsText()).append("\n");
+		sb.append(commandPrefilter.getStatsText()).append("\n");
+		sb.append(nonCommandCache.getStatsText()).append("\n");
+		sb.append(metadataRequests.getStatsText());
+		return sb.toString().trim();
+	}
+
+	/**
+	 * @param policy the rule of the retries for the failed requests
+	 */
+	public void setRetryPolicy(RetryPolicy policy) {
+		retryPolicy = policy;
+	}
+
+	/**
+	 * @param policy the rule to send the same dice roll to another server when the server is slow
+	 */
+	public void setHedgePolicy(HedgePolicy policy) {
+		hedgePolicy = policy;
+	}
+
+	/**
+	 * @param millis interval to check the version of BCDice-API while the client is used
+	 */
+	public void setVersionCheckInterval(long millis) {
+		versionCheckMillis = millis;
+	}
+
+	/**
+	 * @param selector the strategy to choose the server for each request
+	 */
+	public void setEndpointSelector(EndpointSelector selector) {
+		endpointSelector = selector;
+	}
 }
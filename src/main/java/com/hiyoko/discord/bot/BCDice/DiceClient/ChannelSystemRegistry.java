@@ -0,0 +1,363 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Game system of each channel.
+ * Discord channel ids (snowflakes) are kept as long and the system names are shared as int ids,
+ * so one channel costs about 24 bytes instead of two String and a HashMap entry.
+ * Reading doesn't lock. Writing locks only one of the segments.
+ * Channel ids which are not snowflakes (e.g. "general") are kept in a normal concurrent map.
+ * @author Shunshun94
+ *
+ */
+public class ChannelSystemRegistry {
+	private static final int SEGMENTS = 32;
+	private static final int INITIAL_CAPACITY = 64;
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final Map<String, Integer> others = new ConcurrentHashMap<String, Integer>();
+	private final Map<String, Integer> systemIds = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] systemNames = new String[16];
+	private int systemCount = 0;
+	private volatile ObjLongConsumer<String> listener = null;
+
+	public ChannelSystemRegistry() {
+		for(int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * @param channel channel id
+	 * @return system of the channel. If it's not set, null
+	 */
+	public String get(String channel) {
+		long id = toSnowflake(channel);
+		if(id < 0) {
+			Integer systemId = others.get(channel);
+			return systemId == null ? null : systemNames[systemId];
+		}
+		return get(id);
+	}
+
+	/**
+	 * @param channel channel id
+	 * @return system of the channel. If it's not set, null
+	 */
+	public String get(long channel) {
+		int systemId = segmentFor(channel).get(channel);
+		return systemId < 0 ? null : systemNames[systemId];
+	}
+
+	public void put(String channel, String system) {
+		long id = toSnowflake(channel);
+		if(id < 0) {
+			others.put(channel, intern(system));
+		} else {
+			put(id, system);
+		}
+	}
+
+	public void put(long channel, String system) {
+		segmentFor(channel).put(channel, intern(system));
+		ObjLongConsumer<String> current = listener;
+		if(current != null) {
+			current.accept(system, channel);
+		}
+	}
+
+	/**
+	 * @param listener called after the system of a snowflake channel is changed. If null, nothing is called.
+	 */
+	public void setListener(ObjLongConsumer<String> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Call the action for each snowflake channel. Each segment is copied before the actions are called.
+	 * @param action action for the system and the channel
+	 */
+	public void forEachSnowflake(ObjLongConsumer<String> action) {
+		for(Segment segment : segments) {
+			long[] keys;
+			int[] values;
+			synchronized(segment) {
+				keys = new long[segment.size];
+				values = new int[segment.size];
+				segment.copyTo(keys, values);
+			}
+			String[] names = systemNames;
+			for(int i = 0; i < keys.length; i++) {
+				action.accept(names[values[i]], keys[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return count of the channels
+	 */
+	public int size() {
+		int size = others.size();
+		for(Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the systems used in any channel
+	 */
+	public Set<String> getSystems() {
+		Set<String> result = new HashSet<String>();
+		for(Map.Entry<String, String> entry : snapshot().entrySet()) {
+			result.add(entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * The copy of the current assignments. Later changes are not reflected.
+	 * Only the primitive arrays are copied, the Strings are made while iterating.
+	 * @return read only map from channel id to system name
+	 */
+	public Map<String, String> snapshot() {
+		List<long[]> keys = new ArrayList<long[]>(SEGMENTS);
+		List<int[]> values = new ArrayList<int[]>(SEGMENTS);
+		int size = 0;
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				long[] segmentKeys = new long[segment.size];
+				int[] segmentValues = new int[segment.size];
+				size += segment.copyTo(segmentKeys, segmentValues);
+				keys.add(segmentKeys);
+				values.add(segmentValues);
+			}
+		}
+		// read after the segments, so that every copied system id has its name
+		String[] names = systemNames;
+		Map<String, String> otherCopy = new LinkedHashMap<String, String>();
+		others.forEach((channel, systemId) -> otherCopy.put(channel, names[systemId]));
+		return new Snapshot(names, keys, values, size, otherCopy);
+	}
+
+	private synchronized int intern(String system) {
+		Integer known = systemIds.get(system);
+		if(known != null) {
+			return known;
+		}
+		String[] names = systemNames;
+		if(systemCount == names.length) {
+			names = Arrays.copyOf(names, names.length * 2);
+		}
+		names[systemCount] = system;
+		// publish the name before its id can be read
+		systemNames = names;
+		systemIds.put(system, systemCount);
+		return systemCount++;
+	}
+
+	private Segment segmentFor(long channel) {
+		return segments[(int) (mix(channel) >>> 59) & (SEGMENTS - 1)];
+	}
+
+	private static long mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * @return the snowflake. If the channel id is not a snowflake, -1
+	 */
+	static long toSnowflake(String channel) {
+		int length = channel.length();
+		if(length == 0 || length > 19 || channel.charAt(0) < '1' || channel.charAt(0) > '9') {
+			return -1;
+		}
+		long result = 0;
+		for(int i = 0; i < length; i++) {
+			char c = channel.charAt(i);
+			if(c < '0' || c > '9') {
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+			if(result < 0) {
+				return -1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Open addressing table. 0 is the empty key and the value is system id + 1.
+	 * The value is written before the key, so the reader which finds the key finds its value.
+	 */
+	private static class Table {
+		private final AtomicLongArray keys;
+		private final AtomicIntegerArray values;
+		private final int mask;
+
+		private Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			values = new AtomicIntegerArray(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private static class Segment {
+		private volatile Table table = new Table(INITIAL_CAPACITY);
+		private int size = 0;
+
+		private int get(long key) {
+			Table current = table;
+			int i = (int) mix(key) & current.mask;
+			while(true) {
+				long found = current.keys.get(i);
+				if(found == key) {
+					return current.values.get(i) - 1;
+				}
+				if(found == 0) {
+					return -1;
+				}
+				i = (i + 1) & current.mask;
+			}
+		}
+
+		private synchronized void put(long key, int systemId) {
+			Table current = table;
+			int i = (int) mix(key) & current.mask;
+			while(true) {
+				long found = current.keys.get(i);
+				if(found == key) {
+					current.values.set(i, systemId + 1);
+					return;
+				}
+				if(found == 0) {
+					break;
+				}
+				i = (i + 1) & current.mask;
+			}
+			if((size + 1) * 2 > current.keys.length()) {
+				current = resize(current);
+				i = (int) mix(key) & current.mask;
+				while(current.keys.get(i) != 0) {
+					i = (i + 1) & current.mask;
+				}
+			}
+			current.values.set(i, systemId + 1);
+			current.keys.set(i, key);
+			size++;
+		}
+
+		private Table resize(Table old) {
+			Table next = new Table(old.keys.length() * 2);
+			for(int i = 0; i < old.keys.length(); i++) {
+				long key = old.keys.get(i);
+				if(key != 0) {
+					int j = (int) mix(key) & next.mask;
+					while(next.keys.get(j) != 0) {
+						j = (j + 1) & next.mask;
+					}
+					next.values.set(j, old.values.get(i));
+					next.keys.set(j, key);
+				}
+			}
+			table = next;
+			return next;
+		}
+
+		private synchronized int size() {
+			return size;
+		}
+
+		/**
+		 * Call it with the lock of the segment.
+		 * @return count of the copied channels
+		 */
+		private int copyTo(long[] keysTo, int[] valuesTo) {
+			Table current = table;
+			int count = 0;
+			for(int i = 0; i < current.keys.length() && count < keysTo.length; i++) {
+				long key = current.keys.get(i);
+				if(key != 0) {
+					keysTo[count] = key;
+					valuesTo[count] = current.values.get(i) - 1;
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	private static class Snapshot extends AbstractMap<String, String> {
+		private final String[] names;
+		private final List<long[]> keys;
+		private final List<int[]> values;
+		private final int size;
+		private final Map<String, String> others;
+
+		private Snapshot(String[] names, List<long[]> keys, List<int[]> values, int size, Map<String, String> others) {
+			this.names = names;
+			this.keys = keys;
+			this.values = values;
+			this.size = size;
+			this.others = Collections.unmodifiableMap(others);
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public int size() {
+					return size + others.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					Iterator<Map.Entry<String, String>> otherIterator = others.entrySet().iterator();
+					return new Iterator<Map.Entry<String, String>>() {
+						private int segment = 0;
+						private int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							while(segment < keys.size() && index >= keys.get(segment).length) {
+								segment++;
+								index = 0;
+							}
+							return segment < keys.size() || otherIterator.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, String> next() {
+							if(! hasNext()) {
+								throw new NoSuchElementException();
+							}
+							if(segment >= keys.size()) {
+								return otherIterator.next();
+							}
+							Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<String, String>(
+									Long.toString(keys.get(segment)[index]), names[values.get(segment)[index]]);
+							index++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Save the system of each channel to the local disk.
+ * <ul>
+ * <li>snapshot.dat: all channels when the journal was compacted</li>
+ * <li>journal.dat: changes after the snapshot. Each change is appended.</li>
+ * </ul>
+ * setSystem only puts the change on the queue, the file is written by the writer thread.
+ * Each batch of the changes is synced to the disk, so it survives the power loss as well as the killed process.
+ * When the journal has compactRecords changes, it's merged into a new snapshot.
+ * Both files have the generation of the snapshot. A journal older than the snapshot is not replayed,
+ * because the process was stopped after the new snapshot was moved and before the journal was emptied.
+ * Only Discord channels (snowflake ids) are saved. The default system comes from the configuration.
+ * @author Shunshun94
+ *
+ */
+public class ChannelSystemStore {
+	private static final Logger logger = LoggerFactory.getLogger(ChannelSystemStore.class);
+	private static final int SNAPSHOT_MAGIC = 0x42434453; // "BCDS"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int JOURNAL_MAGIC = 0x42434A4C; // "BCJL"
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+	private static final String JOURNAL_FILE = "journal.dat";
+	private final File directory;
+	private final int compactRecords;
+	private final BlockingQueue<Change> queue = new LinkedBlockingQueue<Change>();
+	private ChannelSystemRegistry registry;
+	private FileOutputStream journalFile;
+	private DataOutputStream journal;
+	private int journalRecords = 0;
+	private long generation = 0;
+	private Thread writer;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param directory directory for the files. It's created if it doesn't exist.
+	 * @param compactRecords count of the journal records to make a new snapshot
+	 */
+	public ChannelSystemStore(File directory, int compactRecords) {
+		this.directory = directory;
+		this.compactRecords = Math.max(1, compactRecords);
+	}
+
+	/**
+	 * The store configured by BCDICE_CHANNEL_STORE_DIR (default channelSystems, "none" disables it)
+	 * and BCDICE_CHANNEL_STORE_COMPACT_RECORDS (default 10000).
+	 * @return the store. If it's disabled, null
+	 */
+	public static ChannelSystemStore fromEnv() {
+		String dir = EnvUtil.getString("BCDICE_CHANNEL_STORE_DIR", "channelSystems");
+		if(dir.equalsIgnoreCase("none")) {
+			return null;
+		}
+		return new ChannelSystemStore(new File(dir), EnvUtil.getInt("BCDICE_CHANNEL_STORE_COMPACT_RECORDS", 10000));
+	}
+
+	/**
+	 * Load the saved channels into the registry and save the later changes of the registry.
+	 * @param target registry of the dice client
+	 * @throws IOException When the directory can't be used
+	 */
+	public synchronized void open(ChannelSystemRegistry target) throws IOException {
+		if(registry != null) {
+			throw new IllegalStateException("The store is already opened");
+		}
+		if(! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Failed to create " + directory.getPath());
+		}
+		long started = System.nanoTime();
+		int loaded = loadSnapshot(target);
+		int replayed = replayJournal(target);
+		logger.info(String.format("Loaded %d channels and %d changes from %s in %dms",
+				loaded, Math.max(0, replayed), directory.getPath(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+
+		registry = target;
+		journalRecords = Math.max(0, replayed);
+		openJournal(replayed >= 0);
+		target.setListener((system, channel) -> {
+			if(! closed) {
+				queue.offer(new Change(channel, system));
+			}
+		});
+		writer = new Thread(this::writeLoop, "bcdice-channel-store");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Write the queued changes and stop the writer thread.
+	 */
+	public void close() {
+		closed = true;
+		Thread current = writer;
+		if(current == null) {
+			return;
+		}
+		current.interrupt();
+		try {
+			current.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private int loadSnapshot(ChannelSystemRegistry target) throws IOException {
+		File file = new File(directory, SNAPSHOT_FILE);
+		if(! file.exists()) {
+			return 0;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+				throw new IOException(file.getPath() + " is not a channel system snapshot");
+			}
+			generation = in.readLong();
+			String[] names = new String[in.readInt()];
+			for(int i = 0; i < names.length; i++) {
+				names[i] = in.readUTF();
+			}
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				long channel = in.readLong();
+				target.put(channel, names[in.readInt()]);
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * When the last record is broken, the journal is truncated to the end of the last complete record,
+	 * so that the records appended later are not read after the broken bytes.
+	 * @return count of the replayed records. If the journal is missing or older than the snapshot, -1
+	 */
+	private int replayJournal(ChannelSystemRegistry target) throws IOException {
+		File file = new File(directory, JOURNAL_FILE);
+		if(! file.exists()) {
+			return -1;
+		}
+		int count = 0;
+		long validLength = 0;
+		try(CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+				DataInputStream in = new DataInputStream(counter)) {
+			long journalGeneration;
+			try {
+				if(in.readInt() != JOURNAL_MAGIC) {
+					throw new IOException(file.getPath() + " is not a channel system journal");
+				}
+				journalGeneration = in.readLong();
+			} catch (EOFException e) {
+				// The process was killed while creating the journal
+				return -1;
+			}
+			if(journalGeneration < generation) {
+				logger.info(String.format("%s is older than the snapshot. It's ignored", file.getPath()));
+				return -1;
+			}
+			validLength = counter.getCount();
+			while(true) {
+				long channel;
+				String system;
+				try {
+					channel = in.readLong();
+					system = in.readUTF();
+				} catch (EOFException | UTFDataFormatException e) {
+					// The last record can be broken when the process was killed while writing
+					break;
+				}
+				target.put(channel, system);
+				count++;
+				validLength = counter.getCount();
+			}
+		}
+		if(validLength < file.length()) {
+			logger.warn(String.format("%s has a broken record at %d. It's truncated", file.getPath(), validLength));
+			try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(validLength);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count the bytes read, to know where the last complete record ends.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if(read >= 0) {
+				count++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if(read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		private long getCount() {
+			return count;
+		}
+	}
+
+	/**
+	 * @param append true to append to the replayed journal. false to start a new journal of the current generation
+	 */
+	private void openJournal(boolean append) throws IOException {
+		journalFile = new FileOutputStream(new File(directory, JOURNAL_FILE), append);
+		journal = new DataOutputStream(new BufferedOutputStream(journalFile));
+		if(! append) {
+			journal.writeInt(JOURNAL_MAGIC);
+			journal.writeLong(generation);
+			syncJournal();
+		}
+	}
+
+	private void syncJournal() throws IOException {
+		journal.flush();
+		journalFile.getFD().sync();
+	}
+
+	private void writeLoop() {
+		List<Change> changes = new ArrayList<Change>();
+		while(true) {
+			try {
+				changes.add(queue.take());
+			} catch (InterruptedException e) {
+				if(! closed) {
+					continue;
+				}
+			}
+			queue.drainTo(changes);
+			try {
+				if(! changes.isEmpty()) {
+					write(changes);
+				}
+			} catch (IOException e) {
+				logger.error("Failed to save the channel systems", e);
+			}
+			changes.clear();
+			if(closed && queue.isEmpty()) {
+				closeJournal();
+				return;
+			}
+		}
+	}
+
+	private void write(List<Change> changes) throws IOException {
+		for(Change change : changes) {
+			journal.writeLong(change.channel);
+			journal.writeUTF(change.system);
+		}
+		syncJournal();
+		journalRecords += changes.size();
+		if(journalRecords >= compactRecords) {
+			compact();
+		}
+	}
+
+	/**
+	 * Write all channels to a new snapshot and empty the journal.
+	 * The changes queued while compacting are already in the registry, so writing them to the new journal again is harmless.
+	 * The snapshot has the next generation, so the old journal is ignored if the process stops before it's emptied.
+	 */
+	private void compact() throws IOException {
+		long started = System.nanoTime();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		List<long[]> entries = new ArrayList<long[]>();
+		registry.forEachSnowflake((system, channel) -> {
+			Integer id = ids.get(system);
+			if(id == null) {
+				id = names.size();
+				ids.put(system, id);
+				names.add(system);
+			}
+			entries.add(new long[]{channel, id});
+		});
+
+		File tmp = new File(directory, SNAPSHOT_FILE + ".tmp");
+		try(FileOutputStream file = new FileOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(generation + 1);
+			out.writeInt(names.size());
+			for(String name : names) {
+				out.writeUTF(name);
+			}
+			out.writeInt(entries.size());
+			for(long[] entry : entries) {
+				out.writeLong(entry[0]);
+				out.writeInt((int) entry[1]);
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		Files.move(tmp.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		generation++;
+		journal.close();
+		openJournal(false);
+		journalRecords = 0;
+		logger.info(String.format("Compacted %d channels in %dms", entries.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+	}
+
+	private void closeJournal() {
+		try {
+			journal.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close the channel system journal", e);
+		}
+	}
+
+	private static class Change {
+		private final long channel;
+		private final String system;
+
+		private Change(long channel, String system) {
+			this.channel = channel;
+			this.system = system;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker for one BCDice-API server.
+ * <ul>
+ * <li>CLOSED: requests are sent. It becomes OPEN after failureThreshold failures in a row.</li>
+ * <li>OPEN: requests are not sent. After openMillis, one probe request is allowed and it becomes HALF_OPEN.</li>
+ * <li>HALF_OPEN: waiting for the probe. Success makes it CLOSED and failure makes it OPEN again.</li>
+ * </ul>
+ * @author Shunshun94
+ *
+ */
+public class CircuitBreaker {
+	public enum State {CLOSED, OPEN, HALF_OPEN}
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+	private final String name;
+	private final int failureThreshold;
+	private final long openMillis;
+	private final LongSupplier clock;
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+
+	/**
+	 * @param name name for the log
+	 * @param failureThreshold failures in a row to open the circuit
+	 * @param openMillis milliseconds to wait before the probe
+	 * @param clock current time in milliseconds
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openMillis, LongSupplier clock) {
+		this.name = name;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * The breaker configured by BCDICE_BREAKER_FAILURES (default 5) and BCDICE_BREAKER_OPEN_SECONDS (default 30).
+	 * @param name name for the log
+	 */
+	public CircuitBreaker(String name) {
+		this(name,
+			EnvUtil.getInt("BCDICE_BREAKER_FAILURES", 5),
+			EnvUtil.getLong("BCDICE_BREAKER_OPEN_SECONDS", 30) * 1000,
+			System::currentTimeMillis);
+	}
+
+	/**
+	 * @return If normal requests can be sent, true
+	 */
+	public synchronized boolean isAvailable() {
+		return state == State.CLOSED;
+	}
+
+	/**
+	 * When the circuit is open long enough, it becomes HALF_OPEN and the caller should send one probe.
+	 * @return If the caller should send the probe, true
+	 */
+	public synchronized boolean tryStartProbe() {
+		if(state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+			changeState(State.HALF_OPEN);
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		if(state != State.CLOSED) {
+			changeState(State.CLOSED);
+		}
+	}
+
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		if(state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			openedAt = clock.getAsLong();
+			changeState(State.OPEN);
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void changeState(State next) {
+		if(next == State.OPEN) {
+			logger.warn(String.format("Circuit for %s: %s -> %s (%d failures in a row)", name, state, next, consecutiveFailures));
+		} else {
+			logger.info(String.format("Circuit for %s: %s -> %s", name, state, next));
+		}
+		state = next;
+	}
+}
@@ -0,0 +1,168 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+
+/**
+ * Decide whether the message can be a command of the game system, without asking BCDice-API.
+ * The pattern of each system is compiled once from the prefixs of SystemInfo and the commands which all systems have.
+ * Until the pattern of the system is compiled, the generic pattern is used.
+ * The message whose first character can't start the pattern is rejected without a Matcher, so most chat allocates nothing here.
+ * @author Shunshun94
+ *
+ */
+public class CommandPrefilter {
+	/**
+	 * Commands of all systems: NdM, NbM, NrM, NuM, D66, C(), choice[], repeat and the calculation which starts with a number or (
+	 */
+	private static final String COMMON_COMMANDS =
+			"[\\d\\[(]|D66|C\\(|CHOICE[\\[( ]|X\\d|REP(?:EAT)?\\d";
+	private static final CompiledPattern GENERIC_PATTERN = new CompiledPattern(Pattern.compile("^[\\w\\+\\-#\\$@<>=\\.\\[\\]\\(\\)]+"));
+	private static final CompiledPattern COMMON_PATTERN = compile(null);
+	private final Logger logger = LoggerFactory.getLogger(CommandPrefilter.class);
+	private final Map<String, CompiledPattern> patterns = new ConcurrentHashMap<String, CompiledPattern>();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder passed = new LongAdder();
+
+	/**
+	 * @param command the message
+	 * @param system game type
+	 * @return If the message can be a command of the system, true
+	 */
+	public boolean mayBeCommand(String command, String system) {
+		return mayBeCommand(command, 0, command.length(), system);
+	}
+
+	/**
+	 * Same as mayBeCommand(message.substring(start, end), system), without the substring.
+	 * @param message the message
+	 * @param start the index where the command starts
+	 * @param end the index where the command ends
+	 * @param system game type
+	 * @return If the command can be a command of the system, true
+	 */
+	public boolean mayBeCommand(String message, int start, int end, String system) {
+		if(message.startsWith("http", start)) {
+			rejected.increment();
+			return false;
+		}
+		CompiledPattern pattern = patterns.get(system);
+		boolean result = (pattern == null ? GENERIC_PATTERN : pattern).find(message, start, end);
+		(result ? passed : rejected).increment();
+		return result;
+	}
+
+	/**
+	 * @param system game type
+	 * @return If the pattern of the system is compiled, true
+	 */
+	public boolean isCompiled(String system) {
+		return patterns.containsKey(system);
+	}
+
+	/**
+	 * Compile the pattern of the system from its prefixs.
+	 * If a prefix can't be read as Java regular expression, the generic pattern is used for the system.
+	 * @param system game type used in the channels
+	 * @param info the system
+	 */
+	public void compile(String system, SystemInfo info) {
+		CompiledPattern pattern;
+		try {
+			pattern = info.getPrefixs().isEmpty() ? COMMON_PATTERN : compile(info.getPrefixs());
+		} catch (PatternSyntaxException e) {
+			logger.warn(String.format("Prefixs of %s can't be compiled. All commands are sent to the server", system), e);
+			pattern = GENERIC_PATTERN;
+		}
+		patterns.put(system, pattern);
+	}
+
+	/**
+	 * Forget the compiled patterns. They are compiled again from the new SystemInfo.
+	 */
+	public void clear() {
+		patterns.clear();
+	}
+
+	private static CompiledPattern compile(List<String> prefixs) {
+		StringBuilder regex = new StringBuilder("^S?(?:").append(COMMON_COMMANDS);
+		if(prefixs != null) {
+			for(String prefix : prefixs) {
+				regex.append("|(?:").append(prefix).append(")");
+			}
+		}
+		return new CompiledPattern(Pattern.compile(regex.append(")").toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+	}
+
+	/**
+	 * The pattern and the characters which can start its match.
+	 * Each ASCII character is tried once. The other characters are allowed if a sample of them
+	 * or a character in the pattern is not ASCII, because the prefixs written in Japanese are rare.
+	 */
+	private static class CompiledPattern {
+		private static final char[] NON_ASCII_SAMPLES = {'あ', 'ア', 'ｱ', '表', '（', '＋', '１', '　', 'é'};
+		private final Pattern pattern;
+		private final boolean[] asciiFirst = new boolean[128];
+		private final boolean nonAsciiFirst;
+
+		private CompiledPattern(Pattern pattern) {
+			this.pattern = pattern;
+			for(char c = 0; c < asciiFirst.length; c++) {
+				asciiFirst[c] = mayStartWith(pattern, c);
+			}
+			boolean nonAscii = false;
+			for(char c : NON_ASCII_SAMPLES) {
+				nonAscii |= mayStartWith(pattern, c);
+			}
+			for(char c : pattern.pattern().toCharArray()) {
+				nonAscii |= c >= asciiFirst.length;
+			}
+			nonAsciiFirst = nonAscii;
+		}
+
+		/**
+		 * @return If the pattern matches c or needs more characters after c, true
+		 */
+		private static boolean mayStartWith(Pattern pattern, char c) {
+			Matcher matcher = pattern.matcher(String.valueOf(c));
+			return matcher.lookingAt() || matcher.hitEnd();
+		}
+
+		/**
+		 * A Matcher is made only when the first character passes. It's not kept in ThreadLocal, because the messages run on the virtual threads.
+		 */
+		private boolean find(String message, int start, int end) {
+			if(start >= end) {
+				return false;
+			}
+			char first = message.charAt(start);
+			if(! (first < asciiFirst.length ? asciiFirst[first] : nonAsciiFirst)) {
+				return false;
+			}
+			return pattern.matcher(message).region(start, end).find();
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	public long getPassedCount() {
+		return passed.sum();
+	}
+
+	public String getStatsText() {
+		return String.format("[Command Prefilter] systems: %d, passed: %d, rejected: %d",
+				patterns.size(), getPassedCount(), getRejectedCount());
+	}
+}
@@ -2,6 +2,7 @@ package com.hiyoko.discord.bot.BCDice.DiceClient;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
 import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
@@ -15,6 +16,12 @@ public interface DiceClient {
 	 * @throws IOException When access is failed
 	 */
 	public VersionInfo getVersion() throws IOException;
+
+	/**
+	 * Non-blocking version of getVersion.
+	 * @return future of version info of the server
+	 */
+	public CompletableFuture<VersionInfo> getVersionAsync();
 	
 	public void setDiceServer(String url);
 
@@ -24,6 +31,12 @@ public interface DiceClient {
 	 * @throws IOException When access is failed
 	 */
 	public SystemList getSystems() throws IOException;
+
+	/**
+	 * Non-blocking version of getSystems.
+	 * @return future of the dice systems list
+	 */
+	public CompletableFuture<SystemList> getSystemsAsync();
 	
 	/**
 	 * 
@@ -33,6 +46,13 @@ public interface DiceClient {
 	 */
 	public SystemInfo getSystemInfo(String gameType) throws IOException;
 
+	/**
+	 * Non-blocking version of getSystemInfo.
+	 * @param gameType game name
+	 * @return future of the detail of the dice system of the rule
+	 */
+	public CompletableFuture<SystemInfo> getSystemInfoAsync(String gameType);
+
 	/**
 	 * 
 	 * @param command dice command
@@ -42,6 +62,22 @@ public interface DiceClient {
 	 */
 	public DicerollResult rollDiceWithChannel(String command, String channel) throws IOException;
 
+	/**
+	 * Non-blocking version of rollDiceWithChannel.
+	 * The future is completed with IOException when access is failed.
+	 * @param command dice command
+	 * @param channel target channel
+	 * @return future of dice result
+	 */
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command, String channel);
+
+	/**
+	 * Non-blocking version of rollDice with the current system.
+	 * @param command dice command
+	 * @return future of dice result
+	 */
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command);
+
 	/**
 	 * 
 	 * @param command dice command
@@ -89,10 +125,15 @@ public interface DiceClient {
 
 	/**
 	 * 
-	 * @return
+	 * @return snapshot of the system of each channel. It's not changed by the later setSystem.
 	 */
 	public Map<String, String> getRoomsSystem();
 
+	/**
+	 * @return the live registry of the system of each channel
+	 */
+	public ChannelSystemRegistry getChannelSystemRegistry();
+
 	/**
 	 * 
 	 * @param command
@@ -100,10 +141,41 @@ public interface DiceClient {
 	 */
 	public boolean isDiceCommand(String command);
 
+	/**
+	 * Check the command with the game system of the channel.
+	 * @param command
+	 * @param channel target channel
+	 * @return If the command can be a command of the system, true
+	 */
+	public boolean isDiceCommand(String command, String channel);
+
+	/**
+	 * Same as isDiceCommand(message.substring(start, end), channel).
+	 * Override it to check the message without the substring.
+	 * @param message the message
+	 * @param start the index where the command starts
+	 * @param end the index where the command ends
+	 * @param channel target channel
+	 * @return If the command can be a command of the system, true
+	 */
+	public default boolean isDiceCommand(String message, int start, int end, String channel) {
+		return isDiceCommand(message.substring(start, end), channel);
+	}
+
 	/**
 	 * 
 	 * @param channel target channel
 	 * @return
 	 */
 	public String toString(String channel);
+
+	/**
+	 * @return state of each dice server. If there is nothing to show, empty string.
+	 */
+	public String getServerStatus();
+
+	/**
+	 * Load the information of the systems used in the channels in background.
+	 */
+	public void warmSystemInfoCache();
 }
@@ -13,7 +13,7 @@ public class DiceClientFactory {
 			isBcDice = isBcDice && diceSeed.startsWith("http");
 		}
 		if(isBcDice) {
-			return new BCDiceClient(diceSeeds, errorSensitive);
+			return withLocalDice(new BCDiceClient(diceSeeds, errorSensitive));
 		} else {
 			return new DiceClientMock();
 		}
@@ -21,9 +21,16 @@ public class DiceClientFactory {
 
 	public static DiceClient getDiceClient(String diceSeed, boolean errorSensitive) {
 		if(diceSeed.startsWith("http")) {
-			return new BCDiceClient(diceSeed, errorSensitive);
+			return withLocalDice(new BCDiceClient(diceSeed, errorSensitive));
 		} else {
 			return new DiceClientMock();
 		}
 	}
+
+	/**
+	 * When BCDICE_LOCAL_DICE is on, the basic commands are rolled in this process.
+	 */
+	private static DiceClient withLocalDice(DiceClient remote) {
+		return EnvUtil.getBoolean("BCDICE_LOCAL_DICE", false) ? new LocalDiceClient(remote) : remote;
+	}
 }
@@ -2,8 +2,8 @@ package com.hiyoko.discord.bot.BCDice.DiceClient;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 
 import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
@@ -13,7 +13,7 @@ import com.hiyoko.discord.bot.BCDice.dto.VersionInfo;
 
 public class DiceClientMock implements DiceClient {
 	private final String[] systemList = {"Hiyoko", "Hitsuji", "Koneko", "hitsuji & hiyoko"};
-	private final Map<String, String> system = new HashMap<String, String>();
+	private final ChannelSystemRegistry system = new ChannelSystemRegistry();
 	private static final String DEFAULT_CHANNEL = "general";
 	private static final Pattern DICE_COMMAND_PATTERN = Pattern.compile("^S?\\d+d\\d+"); 
 
@@ -26,11 +26,21 @@ public class DiceClientMock implements DiceClient {
 		return new VersionInfo("hiyoko", "hitsuji");
 	}
 
+	@Override
+	public CompletableFuture<VersionInfo> getVersionAsync() {
+		return CompletableFuture.completedFuture(new VersionInfo("hiyoko", "hitsuji"));
+	}
+
 	@Override
 	public SystemList getSystems() throws IOException {
 		return new SystemList(Arrays.asList(systemList));
 	}
 
+	@Override
+	public CompletableFuture<SystemList> getSystemsAsync() {
+		return CompletableFuture.completedFuture(new SystemList(Arrays.asList(systemList)));
+	}
+
 	@Override
 	public SystemInfo getSystemInfo(String gameType) throws IOException {
 		if(Arrays.asList(systemList).contains(gameType)) {
@@ -40,6 +50,15 @@ public class DiceClientMock implements DiceClient {
 		throw new IOException("System '" + gameType + "' is not found");
 	}
 
+	@Override
+	public CompletableFuture<SystemInfo> getSystemInfoAsync(String gameType) {
+		try {
+			return CompletableFuture.completedFuture(getSystemInfo(gameType));
+		} catch (IOException e) {
+			return AsyncUtil.failed(e);
+		}
+	}
+
 	@Override
 	public DicerollResult rollDice(String command, String system) throws IOException {
 		if(command.equals("1d4")) {
@@ -51,6 +70,9 @@ public class DiceClientMock implements DiceClient {
 		if(command.equals("S2d6")) {
 			return new DicerollResult("(2D6) ＞ 6[4,2] ＞ 6", system, true, true);
 		}
+		if(command.equals("x3%202d6")) {
+			return new DicerollResult("#1\n(2D6) ＞ 6[4,2] ＞ 6\n\n#2\n(2D6) ＞ 7[3,4] ＞ 7\n\n#3\n(2D6) ＞ 2[1,1] ＞ 2", system, false, true);
+		}
 		if(command.equals("1d12")) {
 			return new DicerollResult("(1d12) ＞ 12[12] ＞ 12", system, true, true);
 		}
@@ -97,11 +119,34 @@ public class DiceClientMock implements DiceClient {
 		return rollDice(command, getSystem(channel));
 	}
 
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command, String channel) {
+		try {
+			return CompletableFuture.completedFuture(rollDiceWithChannel(command, channel));
+		} catch (IOException e) {
+			return AsyncUtil.failed(e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command) {
+		try {
+			return CompletableFuture.completedFuture(rollDice(command));
+		} catch (IOException e) {
+			return AsyncUtil.failed(e);
+		}
+	}
+
 	@Override
 	public String toString(String channel) {
 		return "[DiceClientMock] for Mock : " + getSystem(channel);
 	}
 
+	@Override
+	public String getServerStatus() {
+		return "";
+	}
+
 	@Override
 	public void setDiceServer(String url) {
 		//
@@ -109,6 +154,11 @@ public class DiceClientMock implements DiceClient {
 
 	@Override
 	public Map<String, String> getRoomsSystem() {
+		return system.snapshot();
+	}
+
+	@Override
+	public ChannelSystemRegistry getChannelSystemRegistry() {
 		return system;
 	}
 
@@ -116,4 +166,14 @@ public class DiceClientMock implements DiceClient {
 	public boolean isDiceCommand(String command) {
 		return DICE_COMMAND_PATTERN.matcher(command).find();
 	}
+
+	@Override
+	public boolean isDiceCommand(String command, String channel) {
+		return isDiceCommand(command);
+	}
+
+	@Override
+	public void warmSystemInfoCache() {
+		// Nothing to load
+	}
 }
@@ -0,0 +1,168 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Normalize and encode the dice commands for BCDice-API in one pass without regular expressions.
+ * The result is the same as the following old code.
+ * <pre>
+ * for(String target : {"&lt;", "&gt;", "="}) {
+ *   command = command.replaceAll("[\\s　]*[" + target + "]+[\\s　]*", target);
+ * }
+ * command = URLEncoder.encode(command.replaceAll(" ", "%20"), "UTF-8");
+ * command = command.replaceAll("%2520", "%20").replaceAll("%7E", "~");
+ * </pre>
+ * The commands which are rolled often, like 1d100 or 2d6, are kept in a small LRU cache.
+ * @author Shunshun94
+ *
+ */
+public class DiceCommandEncoder {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final int CACHED_COMMAND_LENGTH = 32;
+	private final Map<String, String> cache;
+
+	/**
+	 * @param cacheSize max count of the cached commands
+	 */
+	public DiceCommandEncoder(int cacheSize) {
+		int maxSize = Math.max(0, cacheSize);
+		cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * The cache size is read from BCDICE_COMMAND_CACHE_SIZE (default 256).
+	 */
+	public DiceCommandEncoder() {
+		this(EnvUtil.getInt("BCDICE_COMMAND_CACHE_SIZE", 256));
+	}
+
+	/**
+	 * Same as encodeCommand, but the short commands are cached.
+	 * @param rawCommand raw command
+	 * @return normalized and encoded command
+	 */
+	public String normalize(String rawCommand) {
+		if(rawCommand.length() > CACHED_COMMAND_LENGTH) {
+			return encodeCommand(rawCommand);
+		}
+		synchronized(cache) {
+			String cached = cache.get(rawCommand);
+			if(cached != null) {
+				return cached;
+			}
+		}
+		String encoded = encodeCommand(rawCommand);
+		synchronized(cache) {
+			cache.put(rawCommand, encoded);
+		}
+		return encoded;
+	}
+
+	/**
+	 * The white spaces around &lt;, &gt; and = are removed and the same operators in a row are put together.
+	 * Then the command is URL encoded. The white space is encoded as %20.
+	 * @param rawCommand raw command
+	 * @return normalized and encoded command
+	 */
+	public static String encodeCommand(String rawCommand) {
+		int length = rawCommand.length();
+		StringBuilder sb = new StringBuilder(length + 16);
+		for(int i = 0; i < length; i++) {
+			char c = rawCommand.charAt(i);
+			if(isWhiteSpace(c)) {
+				int end = i;
+				while(end < length && isWhiteSpace(rawCommand.charAt(end))) {
+					end++;
+				}
+				boolean aroundOperator = (i > 0 && isOperator(rawCommand.charAt(i - 1))) ||
+						(end < length && isOperator(rawCommand.charAt(end)));
+				if(! aroundOperator) {
+					for(int j = i; j < end; j++) {
+						appendEncoded(sb, rawCommand, j, true);
+					}
+				}
+				i = end - 1;
+			} else if(isOperator(c) && i > 0 && rawCommand.charAt(i - 1) == c) {
+				continue;
+			} else {
+				i = appendEncoded(sb, rawCommand, i, true);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Same as URLEncoder.encode(system, "UTF-8").replaceAll("%2520", "%20")
+	 * @param system game type
+	 * @return encoded game type
+	 */
+	public static String encodeSystem(String system) {
+		int length = system.length();
+		StringBuilder sb = new StringBuilder(length + 8);
+		for(int i = 0; i < length; i++) {
+			i = appendEncoded(sb, system, i, false);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param forCommand If true, the white space is %20 and ~ is not encoded. If false, the white space is +.
+	 * @return the index of the last read character
+	 */
+	private static int appendEncoded(StringBuilder sb, String text, int index, boolean forCommand) {
+		char c = text.charAt(index);
+		if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+				c == '.' || c == '-' || c == '*' || c == '_') {
+			sb.append(c);
+		} else if(c == ' ') {
+			sb.append(forCommand ? "%20" : "+");
+		} else if(c == '~' && forCommand) {
+			sb.append(c);
+		} else if(c == '%') {
+			// "%25" followed by "20" was replaced with "%20"
+			sb.append(text.startsWith("20", index + 1) ? "%" : "%25");
+		} else if(c < 0x80) {
+			appendByte(sb, c);
+		} else if(Character.isHighSurrogate(c) && index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1))) {
+			int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+			appendByte(sb, 0xF0 | (codePoint >> 18));
+			appendByte(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+			appendByte(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+			appendByte(sb, 0x80 | (codePoint & 0x3F));
+			return index + 1;
+		} else if(Character.isSurrogate(c)) {
+			// URLEncoder writes ? for the broken surrogate
+			appendByte(sb, '?');
+		} else if(c < 0x800) {
+			appendByte(sb, 0xC0 | (c >> 6));
+			appendByte(sb, 0x80 | (c & 0x3F));
+		} else {
+			appendByte(sb, 0xE0 | (c >> 12));
+			appendByte(sb, 0x80 | ((c >> 6) & 0x3F));
+			appendByte(sb, 0x80 | (c & 0x3F));
+		}
+		return index;
+	}
+
+	private static void appendByte(StringBuilder sb, int b) {
+		sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+	}
+
+	/**
+	 * Same as [\s　] of the regular expression
+	 */
+	private static boolean isWhiteSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r' || c == '　';
+	}
+
+	private static boolean isOperator(char c) {
+		return c == '<' || c == '>' || c == '=';
+	}
+}
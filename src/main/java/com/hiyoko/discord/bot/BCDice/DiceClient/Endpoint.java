@@ -0,0 +1,127 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
+
+/**
+ * One BCDice-API server and its observed latency / error rate.
+ * @author Shunshun94
+ *
+ */
+public class Endpoint {
+	private static final double EWMA_WEIGHT = 0.2;
+	// A failed request is counted as a slow request, or a server which fails fast looks fast
+	private static final double FAILURE_LATENCY_MILLIS = 2000;
+	private final String url;
+	private final CircuitBreaker breaker;
+	private final AtomicInteger outstanding = new AtomicInteger(0);
+	private final AtomicLong requestCount = new AtomicLong(0);
+	private final AtomicLong errorCount = new AtomicLong(0);
+	private double ewmaLatencyMillis = 0;
+	private double ewmaErrorRate = 0;
+	private final Map<String, RequestMetrics> requestMetrics = new ConcurrentHashMap<String, RequestMetrics>();
+
+	/**
+	 * @param url BCDice-API server URL. It must be ended with "/".
+	 */
+	public Endpoint(String url) {
+		this(url, new CircuitBreaker(url));
+	}
+
+	/**
+	 * @param url BCDice-API server URL. It must be ended with "/".
+	 * @param breaker circuit breaker for this server
+	 */
+	public Endpoint(String url, CircuitBreaker breaker) {
+		this.url = url;
+		this.breaker = breaker;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	/**
+	 * Call it when a request to this server is started.
+	 * @return started time for finish method
+	 */
+	public long start() {
+		outstanding.incrementAndGet();
+		requestCount.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Call it when the request started by start method is finished.
+	 * @param startedNanos the value returned by start method
+	 * @param success If the server answered correctly, true
+	 */
+	public void finish(long startedNanos, boolean success) {
+		outstanding.decrementAndGet();
+		double latency = (System.nanoTime() - startedNanos) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+		if(success) {
+			breaker.onSuccess();
+		} else {
+			errorCount.incrementAndGet();
+			breaker.onFailure();
+			latency = Math.max(latency, FAILURE_LATENCY_MILLIS);
+		}
+		synchronized(this) {
+			ewmaLatencyMillis = (ewmaLatencyMillis == 0) ? latency : ewmaLatencyMillis + EWMA_WEIGHT * (latency - ewmaLatencyMillis);
+			ewmaErrorRate = ewmaErrorRate + EWMA_WEIGHT * ((success ? 0 : 1) - ewmaErrorRate);
+		}
+	}
+
+	/**
+	 * Call it when the request started by start method is cancelled.
+	 * The cancelled request is not counted as success or failure.
+	 * @param startedNanos the value returned by start method
+	 */
+	public void cancel(long startedNanos) {
+		outstanding.decrementAndGet();
+	}
+
+	/**
+	 * @param api the path of the API without the query
+	 * @param registry the registry to register the metrics at the first request
+	 * @return the metrics of the requests to the API of this server
+	 */
+	RequestMetrics getRequestMetrics(String api, MetricsRegistry registry) {
+		RequestMetrics found = requestMetrics.get(api);
+		return found != null ? found : requestMetrics.computeIfAbsent(api, k -> new RequestMetrics(registry, url, k));
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	public synchronized double getEwmaLatencyMillis() {
+		return ewmaLatencyMillis;
+	}
+
+	public synchronized double getEwmaErrorRate() {
+		return ewmaErrorRate;
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public String toString() {
+		return String.format("%s %s (latency %.0fms / error rate %.2f / in flight %d)",
+				url, breaker.getState(), getEwmaLatencyMillis(), getEwmaErrorRate(), getOutstanding());
+	}
+}
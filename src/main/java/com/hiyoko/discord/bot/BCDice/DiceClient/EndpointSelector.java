@@ -0,0 +1,18 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+
+/**
+ * Decide which BCDice-API server the next request is sent to.
+ * @author Shunshun94
+ *
+ */
+public interface EndpointSelector {
+	/**
+	 * @param endpoints all configured servers. It's never empty.
+	 * @param primary index of the server chosen by setDiceServer or the last failover
+	 * @param avoid the server which has just failed. It can be null.
+	 * @return the server for the next request
+	 */
+	public Endpoint select(List<Endpoint> endpoints, int primary, Endpoint avoid);
+}
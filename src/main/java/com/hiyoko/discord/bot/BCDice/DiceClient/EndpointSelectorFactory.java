@@ -0,0 +1,40 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+public class EndpointSelectorFactory {
+	/**
+	 * @param name primary, round-robin, least-outstanding or ewma
+	 * @return The selector. If the name is unknown, primary selector.
+	 */
+	public static EndpointSelector getEndpointSelector(String name) {
+		if(name == null) {
+			return new PrimaryEndpointSelector();
+		}
+		switch(name.toLowerCase()) {
+		case "round-robin":
+			return new RoundRobinEndpointSelector();
+		case "least-outstanding":
+			return new LeastOutstandingEndpointSelector();
+		case "ewma":
+			return new EwmaEndpointSelector();
+		default:
+			return new PrimaryEndpointSelector();
+		}
+	}
+
+	/**
+	 * @return The selector written in environment variable BCDICE_API_BALANCER.
+	 * If it's not set, least-outstanding when BCDICE_API_SECONDARY is set, or primary.
+	 */
+	public static EndpointSelector getEndpointSelector() {
+		return getEndpointSelector(EnvUtil.getString("BCDICE_API_BALANCER", getDefaultName(EnvUtil.getString("BCDICE_API_SECONDARY", null) != null)));
+	}
+
+	/**
+	 * @param hasSecondary If the secondary server is configured, true
+	 * @return the name of the selector used when BCDICE_API_BALANCER is not set
+	 */
+	static String getDefaultName(boolean hasSecondary) {
+		// With one server, every selector chooses it. Set primary explicitly to use the secondary only for failover
+		return hasSecondary ? "least-outstanding" : "primary";
+	}
+}
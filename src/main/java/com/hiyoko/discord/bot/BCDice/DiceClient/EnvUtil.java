@@ -0,0 +1,58 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read the settings from the environment variables.
+ * When the value is not set or broken, the default value is used.
+ * @author Shunshun94
+ *
+ */
+public class EnvUtil {
+	private static final Logger logger = LoggerFactory.getLogger(EnvUtil.class);
+
+	private EnvUtil() {}
+
+	public static String getString(String name, String defaultValue) {
+		String env = System.getenv(name);
+		if(env == null || env.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return env.trim();
+	}
+
+	public static int getInt(String name, int defaultValue) {
+		String env = getString(name, null);
+		if(env == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(env);
+		} catch (NumberFormatException e) {
+			logger.warn(String.format("%s [%s] is not a number. %d is used", name, env, defaultValue));
+			return defaultValue;
+		}
+	}
+
+	public static long getLong(String name, long defaultValue) {
+		String env = getString(name, null);
+		if(env == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(env);
+		} catch (NumberFormatException e) {
+			logger.warn(String.format("%s [%s] is not a number. %d is used", name, env, defaultValue));
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String name, boolean defaultValue) {
+		String env = getString(name, null);
+		if(env == null) {
+			return defaultValue;
+		}
+		return env.equalsIgnoreCase("true") || env.equals("1") || env.equalsIgnoreCase("on");
+	}
+}
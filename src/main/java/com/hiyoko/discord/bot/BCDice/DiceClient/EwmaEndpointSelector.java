@@ -0,0 +1,36 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+
+/**
+ * Use the server which has the lowest expected cost.
+ * The cost is EWMA latency multiplied by the requests in flight, and it grows with the error rate.
+ * A server which is not measured yet has no latency, so it's tried first.
+ * @author Shunshun94
+ *
+ */
+public class EwmaEndpointSelector implements EndpointSelector {
+	private static final double MIN_SUCCESS_RATE = 0.05;
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, int primary, Endpoint avoid) {
+		Endpoint best = null;
+		double bestCost = Double.MAX_VALUE;
+		for(Endpoint endpoint : endpoints) {
+			if(endpoint == avoid && endpoints.size() > 1) {
+				continue;
+			}
+			double cost = cost(endpoint);
+			if(cost < bestCost) {
+				best = endpoint;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	static double cost(Endpoint endpoint) {
+		double successRate = Math.max(MIN_SUCCESS_RATE, 1 - endpoint.getEwmaErrorRate());
+		return (endpoint.getEwmaLatencyMillis() + 1) * (endpoint.getOutstanding() + 1) / successRate;
+	}
+}
@@ -0,0 +1,97 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+/**
+ * Decide when the same dice roll is sent to another server.
+ * When the first request doesn't answer in the delay, the second request is sent and the faster answer is used.
+ * The second requests are limited to maxPercent of the rolls so that the hedging can't double the load.
+ * @author Shunshun94
+ *
+ */
+public class HedgePolicy {
+	private static final int MIN_SAMPLES = 20;
+	private static final long MIN_DELAY_MILLIS = 50;
+	private final boolean enabled;
+	private final long fixedDelayMillis;
+	private final double percentile;
+	private final long fallbackDelayMillis;
+	private final RetryBudget budget;
+	private final LatencyTracker latency = new LatencyTracker(512);
+
+	/**
+	 * @param enabled If false, no request is hedged
+	 * @param fixedDelayMillis delay before the second request. If it's negative, the percentile of the observed latency is used
+	 * @param percentile percentile used for the delay (0.0 - 1.0)
+	 * @param fallbackDelayMillis delay until enough latencies are observed
+	 * @param maxPercent max share of the rolls which can be hedged
+	 */
+	public HedgePolicy(boolean enabled, long fixedDelayMillis, double percentile, long fallbackDelayMillis, double maxPercent) {
+		this.enabled = enabled;
+		this.fixedDelayMillis = fixedDelayMillis;
+		this.percentile = percentile;
+		this.fallbackDelayMillis = fallbackDelayMillis;
+		this.budget = new RetryBudget(maxPercent / 100.0, 0, System::currentTimeMillis);
+	}
+
+	/**
+	 * The policy configured by the environment variables
+	 * BCDICE_HEDGE (on / off, default off), BCDICE_HEDGE_DELAY (ms or p95 / p99, default p95)
+	 * and BCDICE_HEDGE_MAX_PERCENT (default 10).
+	 * @return the policy
+	 */
+	public static HedgePolicy fromEnv() {
+		String rawDelay = EnvUtil.getString("BCDICE_HEDGE_DELAY", "p95");
+		long fixedDelay = -1;
+		double percentile = 0.95;
+		if(rawDelay.startsWith("p")) {
+			try {
+				percentile = Integer.parseInt(rawDelay.substring(1)) / 100.0;
+			} catch (NumberFormatException e) {
+				percentile = 0.95;
+			}
+		} else {
+			fixedDelay = EnvUtil.getLong("BCDICE_HEDGE_DELAY", -1);
+		}
+		return new HedgePolicy(
+				EnvUtil.getBoolean("BCDICE_HEDGE", false),
+				fixedDelay, percentile, 1000,
+				EnvUtil.getInt("BCDICE_HEDGE_MAX_PERCENT", 10));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Call it for each roll.
+	 */
+	public void onRequest() {
+		budget.onRequest();
+	}
+
+	/**
+	 * @param latencyMillis the time until the roll is answered
+	 */
+	public void recordLatency(long latencyMillis) {
+		latency.record(latencyMillis);
+	}
+
+	/**
+	 * @return If the second request can be sent, true. The hedge budget is consumed.
+	 */
+	public boolean tryHedge() {
+		return budget.tryWithdraw();
+	}
+
+	/**
+	 * @return delay before the second request in milliseconds
+	 */
+	public long getDelayMillis() {
+		if(fixedDelayMillis >= 0) {
+			return fixedDelayMillis;
+		}
+		if(latency.getCount() < MIN_SAMPLES) {
+			return fallbackDelayMillis;
+		}
+		return Math.max(MIN_DELAY_MILLIS, latency.getPercentile(percentile));
+	}
+}
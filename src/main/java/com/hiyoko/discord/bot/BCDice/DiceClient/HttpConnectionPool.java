@@ -0,0 +1,136 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pooled HTTP connections shared by BCDiceClient and OriginalDiceBotClient.
+ * The settings are read from the following environment variables.
+ * <ul>
+ * <li>BCDICE_HTTP_MAX_TOTAL: max connections in the pool (default 50)</li>
+ * <li>BCDICE_HTTP_MAX_PER_ROUTE: max connections for one server (default 20)</li>
+ * <li>BCDICE_HTTP_IDLE_TIMEOUT: seconds until an idle connection is closed (default 30)</li>
+ * <li>BCDICE_HTTP_KEEP_ALIVE: seconds to keep a connection when the server doesn't say (default 60)</li>
+ * <li>BCDICE_HTTP_CONNECT_TIMEOUT: milliseconds to connect (default 5000)</li>
+ * <li>BCDICE_HTTP_SOCKET_TIMEOUT: milliseconds to wait for the response (default 30000)</li>
+ * <li>BCDICE_HTTP_ASYNC_THREADS: threads which call the async requests (default 10)</li>
+ * </ul>
+ * @author Shunshun94
+ *
+ */
+public class HttpConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+	private static HttpConnectionPool shared;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final ExecutorService asyncExecutor;
+
+	/**
+	 * @param maxTotal max connections in the pool
+	 * @param maxPerRoute max connections for one server
+	 * @param idleTimeoutSeconds seconds until an idle connection is closed
+	 * @param keepAliveSeconds seconds to keep a connection when the server doesn't send Keep-Alive header
+	 * @param connectTimeoutMillis milliseconds to connect
+	 * @param socketTimeoutMillis milliseconds to wait for the response
+	 * @param asyncThreads threads which call the async requests
+	 */
+	public HttpConnectionPool(int maxTotal, int maxPerRoute, long idleTimeoutSeconds, long keepAliveSeconds,
+			int connectTimeoutMillis, int socketTimeoutMillis, int asyncThreads) {
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		connectionManager.setValidateAfterInactivity(2000);
+
+		ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return serverKeepAlive > 0 ? serverKeepAlive : TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+		};
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setConnectionRequestTimeout(connectTimeoutMillis)
+				.setSocketTimeout(socketTimeoutMillis)
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(keepAlive)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+				.build();
+		asyncExecutor = Executors.newFixedThreadPool(asyncThreads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "bcdice-http-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		logger.info(String.format("HTTP connection pool: max total %d / max per route %d / idle timeout %ds / keep-alive %ds",
+				maxTotal, maxPerRoute, idleTimeoutSeconds, keepAliveSeconds));
+	}
+
+	/**
+	 * @return The pool shared in the application. It's configured by the environment variables.
+	 */
+	public static synchronized HttpConnectionPool getShared() {
+		if(shared == null) {
+			shared = new HttpConnectionPool(
+					EnvUtil.getInt("BCDICE_HTTP_MAX_TOTAL", 50),
+					EnvUtil.getInt("BCDICE_HTTP_MAX_PER_ROUTE", 20),
+					EnvUtil.getLong("BCDICE_HTTP_IDLE_TIMEOUT", 30),
+					EnvUtil.getLong("BCDICE_HTTP_KEEP_ALIVE", 60),
+					EnvUtil.getInt("BCDICE_HTTP_CONNECT_TIMEOUT", 5000),
+					EnvUtil.getInt("BCDICE_HTTP_SOCKET_TIMEOUT", 30000),
+					EnvUtil.getInt("BCDICE_HTTP_ASYNC_THREADS", 10));
+		}
+		return shared;
+	}
+
+	/**
+	 * Create a JAX-RS client on the pool.
+	 * Closing the client doesn't close the pool.
+	 * @return new client
+	 */
+	public Client newClient() {
+		return new ResteasyClientBuilder()
+				.httpEngine(new ApacheHttpClient43Engine(httpClient, false))
+				.asyncExecutor(asyncExecutor, false)
+				.build();
+	}
+
+	/**
+	 * @return statistics of the whole pool
+	 */
+	public PoolStats getStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * @return statistics of the pool as a message
+	 */
+	public String getStatsText() {
+		PoolStats stats = getStats();
+		return String.format("[HTTP Pool] leased: %d / available: %d / pending: %d / max: %d (routes: %d)",
+				stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(),
+				connectionManager.getRoutes().size());
+	}
+}
@@ -0,0 +1,64 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keep the latest latencies and answer the percentile of them.
+ * The percentile is calculated at most once for each refresh interval, so reading it is cheap.
+ * @author Shunshun94
+ *
+ */
+public class LatencyTracker {
+	private static final long REFRESH_INTERVAL_MILLIS = 1000;
+	private final AtomicLongArray samples;
+	private final AtomicInteger cursor = new AtomicInteger(0);
+	private final AtomicInteger count = new AtomicInteger(0);
+	private volatile long cachedAt = 0;
+	private volatile double cachedPercentile = -1;
+	private volatile long cachedPercentileMillis = -1;
+
+	/**
+	 * @param size count of the kept latencies
+	 */
+	public LatencyTracker(int size) {
+		samples = new AtomicLongArray(size);
+	}
+
+	public void record(long latencyMillis) {
+		samples.set(Math.floorMod(cursor.getAndIncrement(), samples.length()), latencyMillis);
+		if(count.get() < samples.length()) {
+			count.incrementAndGet();
+		}
+	}
+
+	public int getCount() {
+		return Math.min(count.get(), samples.length());
+	}
+
+	/**
+	 * @param percentile 0.0 - 1.0
+	 * @return the latency in milliseconds. If nothing is recorded, -1
+	 */
+	public long getPercentile(double percentile) {
+		long now = System.currentTimeMillis();
+		if(percentile == cachedPercentile && now - cachedAt < REFRESH_INTERVAL_MILLIS) {
+			return cachedPercentileMillis;
+		}
+		int size = getCount();
+		if(size == 0) {
+			return -1;
+		}
+		long[] copy = new long[size];
+		for(int i = 0; i < size; i++) {
+			copy[i] = samples.get(i);
+		}
+		Arrays.sort(copy);
+		long result = copy[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+		cachedPercentileMillis = result;
+		cachedPercentile = percentile;
+		cachedAt = now;
+		return result;
+	}
+}
@@ -0,0 +1,27 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+
+/**
+ * Use the server which has the fewest requests in flight.
+ * When some servers have the same count, the faster one is used.
+ * @author Shunshun94
+ *
+ */
+public class LeastOutstandingEndpointSelector implements EndpointSelector {
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, int primary, Endpoint avoid) {
+		Endpoint best = null;
+		for(Endpoint endpoint : endpoints) {
+			if(endpoint == avoid && endpoints.size() > 1) {
+				continue;
+			}
+			if(best == null ||
+				endpoint.getOutstanding() < best.getOutstanding() ||
+				(endpoint.getOutstanding() == best.getOutstanding() && endpoint.getEwmaLatencyMillis() < best.getEwmaLatencyMillis())) {
+				best = endpoint;
+			}
+		}
+		return best;
+	}
+}
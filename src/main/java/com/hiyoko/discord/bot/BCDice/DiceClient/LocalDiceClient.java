@@ -0,0 +1,198 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+import com.hiyoko.discord.bot.BCDice.dto.SystemList;
+import com.hiyoko.discord.bot.BCDice.dto.VersionInfo;
+
+/**
+ * DiceClient which rolls the basic commands in this process.
+ * Only the systems in localSystems are rolled locally, because the other systems give special meanings to the same commands.
+ * The other commands and everything else are sent to the remote client.
+ * @author Shunshun94
+ *
+ */
+public class LocalDiceClient implements DiceClient {
+	private final DiceClient remote;
+	private final LocalDiceEngine engine;
+	private final Set<String> localSystems;
+
+	/**
+	 * @param remote the client for the commands which can't be rolled locally
+	 * @param engine the local dice roller
+	 * @param localSystems systems rolled locally
+	 */
+	public LocalDiceClient(DiceClient remote, LocalDiceEngine engine, Set<String> localSystems) {
+		this.remote = remote;
+		this.engine = engine;
+		this.localSystems = localSystems;
+	}
+
+	/**
+	 * The systems are read from BCDICE_LOCAL_DICE_SYSTEMS (comma separated, default DiceBot).
+	 * @param remote the client for the commands which can't be rolled locally
+	 */
+	public LocalDiceClient(DiceClient remote) {
+		this(remote, new LocalDiceEngine(),
+				new HashSet<String>(Arrays.asList(EnvUtil.getString("BCDICE_LOCAL_DICE_SYSTEMS", "DiceBot").split(","))));
+	}
+
+	/**
+	 * @param command the encoded command
+	 * @param system the system of the channel
+	 * @return the result. If it can't be rolled locally, null
+	 */
+	private DicerollResult rollLocally(String command, String system) {
+		if(! localSystems.contains(system)) {
+			return null;
+		}
+		try {
+			return engine.roll(URLDecoder.decode(command, "UTF-8"), system);
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public DicerollResult rollDice(String command, String system) throws IOException {
+		DicerollResult result = rollLocally(command, system);
+		return result == null ? remote.rollDice(command, system) : result;
+	}
+
+	@Override
+	public DicerollResult rollDice(String command) throws IOException {
+		return rollDice(command, remote.getSystem());
+	}
+
+	@Override
+	public DicerollResult rollDiceWithChannel(String command, String channel) throws IOException {
+		return rollDice(command, remote.getSystem(channel));
+	}
+
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command, String channel) {
+		DicerollResult result = rollLocally(command, remote.getSystem(channel));
+		return result == null ? remote.rollDiceAsync(command, channel) : CompletableFuture.completedFuture(result);
+	}
+
+	@Override
+	public CompletableFuture<DicerollResult> rollDiceAsync(String command) {
+		DicerollResult result = rollLocally(command, remote.getSystem());
+		return result == null ? remote.rollDiceAsync(command) : CompletableFuture.completedFuture(result);
+	}
+
+	@Override
+	public VersionInfo getVersion() throws IOException {
+		return remote.getVersion();
+	}
+
+	@Override
+	public CompletableFuture<VersionInfo> getVersionAsync() {
+		return remote.getVersionAsync();
+	}
+
+	@Override
+	public void setDiceServer(String url) {
+		remote.setDiceServer(url);
+	}
+
+	@Override
+	public SystemList getSystems() throws IOException {
+		return remote.getSystems();
+	}
+
+	@Override
+	public CompletableFuture<SystemList> getSystemsAsync() {
+		return remote.getSystemsAsync();
+	}
+
+	@Override
+	public SystemInfo getSystemInfo(String gameType) throws IOException {
+		return remote.getSystemInfo(gameType);
+	}
+
+	@Override
+	public CompletableFuture<SystemInfo> getSystemInfoAsync(String gameType) {
+		return remote.getSystemInfoAsync(gameType);
+	}
+
+	@Override
+	public String setSystem(String newSystem) {
+		return remote.setSystem(newSystem);
+	}
+
+	@Override
+	public String setSystem(String newSystem, String channel) {
+		return remote.setSystem(newSystem, channel);
+	}
+
+	@Override
+	public String getSystem() {
+		return remote.getSystem();
+	}
+
+	@Override
+	public String getSystem(String channel) {
+		return remote.getSystem(channel);
+	}
+
+	@Override
+	public Map<String, String> getRoomsSystem() {
+		return remote.getRoomsSystem();
+	}
+
+	@Override
+	public ChannelSystemRegistry getChannelSystemRegistry() {
+		return remote.getChannelSystemRegistry();
+	}
+
+	@Override
+	public boolean isDiceCommand(String command) {
+		return remote.isDiceCommand(command);
+	}
+
+	@Override
+	public boolean isDiceCommand(String command, String channel) {
+		return remote.isDiceCommand(command, channel);
+	}
+
+	@Override
+	public boolean isDiceCommand(String message, int start, int end, String channel) {
+		return remote.isDiceCommand(message, start, end, channel);
+	}
+
+	@Override
+	public String toString(String channel) {
+		return remote.toString(channel);
+	}
+
+	public String toString() {
+		return remote.toString();
+	}
+
+	@Override
+	public String getServerStatus() {
+		return remote.getServerStatus();
+	}
+
+	@Override
+	public void warmSystemInfoCache() {
+		remote.warmSystemInfoCache();
+	}
+
+	/**
+	 * @return the client for the commands which can't be rolled locally
+	 */
+	public DiceClient getRemote() {
+		return remote;
+	}
+}
@@ -0,0 +1,186 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+
+/**
+ * Dice roller for the basic commands of BCDice DiceBot.
+ * The result is the same format as BCDice-API.
+ * <ul>
+ * <li>NdM, NdM+K, NdM+XdY-K: ": (2D6+1) ＞ 7[3,4]+1 ＞ 8"</li>
+ * <li>comparison (&gt;=, &lt;=, &gt;, &lt;, =, &lt;&gt;): ": (2D6>=8) ＞ 9[4,5] ＞ 9 ＞ 成功"</li>
+ * <li>choice[a,b,c]: ": (choice[a,b,c]) ＞ b"</li>
+ * <li>S prefix for the secret roll</li>
+ * </ul>
+ * Other commands are not handled and should be sent to BCDice-API.
+ * @author Shunshun94
+ *
+ */
+public class LocalDiceEngine {
+	private static final int MAX_DICE = 100;
+	private static final int MAX_FACES = 1000;
+	private static final int MAX_TERMS = 10;
+	private static final Pattern CHOICE = Pattern.compile("^(S)?(choice\\[([^,\\]]+(?:,[^,\\]]+)+)\\])(?:\\s|$)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern NOT_ONLY_ONE_DIE = Pattern.compile("[^\\d\\[\\]]+");
+	private static final String[] OPERATORS = {">=", "<=", "<>", ">", "<", "="};
+	private final Random random;
+
+	public LocalDiceEngine() {
+		this(new SecureRandom());
+	}
+
+	/**
+	 * @param random random source. It should be SecureRandom except for the tests.
+	 */
+	public LocalDiceEngine(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * @param command decoded command. The text after the first white space is ignored.
+	 * @param system the system name for the result
+	 * @return the result. If the command is not supported, null
+	 */
+	public DicerollResult roll(String command, String system) {
+		Matcher choice = CHOICE.matcher(command);
+		if(choice.find()) {
+			String[] targets = choice.group(3).split(",");
+			String text = String.format(": (%s) ＞ %s", choice.group(2), targets[random.nextInt(targets.length)]);
+			return new DicerollResult(text, system, choice.group(1) != null, true);
+		}
+
+		String token = firstToken(command).toUpperCase();
+		boolean secret = token.startsWith("S");
+		String expression = secret ? token.substring(1) : token;
+		String operator = "";
+		long target = 0;
+		for(String candidate : OPERATORS) {
+			int index = expression.indexOf(candidate);
+			if(index > 0) {
+				Long parsed = parseNumber(expression, index + candidate.length(), expression.length());
+				if(parsed == null) {
+					return null;
+				}
+				operator = candidate;
+				target = parsed;
+				expression = expression.substring(0, index);
+				break;
+			}
+		}
+
+		StringBuilder detail = new StringBuilder();
+		long total = 0;
+		boolean hasDice = false;
+		int terms = 0;
+		int start = 0;
+		char sign = '+';
+		while(start < expression.length()) {
+			if(++terms > MAX_TERMS) {
+				return null;
+			}
+			int end = start;
+			while(end < expression.length() && expression.charAt(end) != '+' && expression.charAt(end) != '-') {
+				end++;
+			}
+			int d = expression.indexOf('D', start);
+			String termDetail;
+			long value;
+			if(d >= 0 && d < end) {
+				Long count = parseNumber(expression, start, d);
+				Long faces = parseNumber(expression, d + 1, end);
+				if(count == null || faces == null || count < 1 || count > MAX_DICE || faces < 1 || faces > MAX_FACES) {
+					return null;
+				}
+				StringBuilder list = new StringBuilder();
+				value = 0;
+				for(int i = 0; i < count; i++) {
+					int die = random.nextInt(faces.intValue()) + 1;
+					value += die;
+					list.append(i == 0 ? "" : ",").append(die);
+				}
+				termDetail = value + "[" + list + "]";
+				hasDice = true;
+			} else {
+				Long constant = parseNumber(expression, start, end);
+				if(constant == null) {
+					return null;
+				}
+				value = constant;
+				termDetail = Long.toString(constant);
+			}
+			if(detail.length() > 0) {
+				detail.append(sign);
+			} else if(sign == '-') {
+				return null;
+			}
+			detail.append(termDetail);
+			total += (sign == '+') ? value : -value;
+			if(end == expression.length()) {
+				break;
+			}
+			sign = expression.charAt(end);
+			start = end + 1;
+			if(start == expression.length()) {
+				return null;
+			}
+		}
+		if(! hasDice) {
+			return null;
+		}
+
+		String shownCommand = expression + operator + (operator.isEmpty() ? "" : Long.toString(target));
+		String diceText = detail.toString();
+		StringBuilder text = new StringBuilder(": (").append(shownCommand).append(") ＞ ");
+		if(NOT_ONLY_ONE_DIE.matcher(diceText).find()) {
+			text.append(diceText).append(" ＞ ");
+		}
+		text.append(total);
+		if(! operator.isEmpty()) {
+			text.append(" ＞ ").append(compare(total, operator, target) ? "成功" : "失敗");
+		}
+		return new DicerollResult(text.toString(), system, secret, true);
+	}
+
+	private static boolean compare(long value, String operator, long target) {
+		switch(operator) {
+		case ">=": return value >= target;
+		case "<=": return value <= target;
+		case "<>": return value != target;
+		case ">": return value > target;
+		case "<": return value < target;
+		default: return value == target;
+		}
+	}
+
+	private static String firstToken(String command) {
+		String trimmed = command.trim();
+		for(int i = 0; i < trimmed.length(); i++) {
+			if(Character.isWhitespace(trimmed.charAt(i)) || trimmed.charAt(i) == '　') {
+				return trimmed.substring(0, i);
+			}
+		}
+		return trimmed;
+	}
+
+	/**
+	 * @return the number. If the text is empty, not a number or too long, null
+	 */
+	private static Long parseNumber(String text, int start, int end) {
+		if(start >= end || end - start > 9) {
+			return null;
+		}
+		long result = 0;
+		for(int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if(c < '0' || c > '9') {
+				return null;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+}
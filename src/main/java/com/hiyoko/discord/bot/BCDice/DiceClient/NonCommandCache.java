@@ -0,0 +1,91 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Size bounded LRU cache of the messages which BCDice-API answered as not a command.
+ * The same chat phrases are not sent to the server again until ttlMillis passes.
+ * @author Shunshun94
+ *
+ */
+public class NonCommandCache {
+	private final int maxSize;
+	private final long ttlMillis;
+	private final LongSupplier clock;
+	private final Map<String, Long> entries;
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * @param maxSize max count of the cached messages
+	 * @param ttlMillis milliseconds to remember the message
+	 * @param clock current time in milliseconds
+	 */
+	public NonCommandCache(int maxSize, long ttlMillis, LongSupplier clock) {
+		this.maxSize = Math.max(1, maxSize);
+		this.ttlMillis = ttlMillis;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > NonCommandCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * The cache configured by BCDICE_NON_COMMAND_CACHE_SIZE (default 4096)
+	 * and BCDICE_NON_COMMAND_CACHE_TTL (seconds, default 3600).
+	 */
+	public NonCommandCache() {
+		this(EnvUtil.getInt("BCDICE_NON_COMMAND_CACHE_SIZE", 4096),
+			EnvUtil.getLong("BCDICE_NON_COMMAND_CACHE_TTL", 3600) * 1000,
+			System::currentTimeMillis);
+	}
+
+	/**
+	 * @param system game type
+	 * @param command normalized command
+	 * @return If the command is known as not a command of the system, true
+	 */
+	public synchronized boolean isNonCommand(String system, String command) {
+		String key = key(system, command);
+		Long cachedAt = entries.get(key);
+		if(cachedAt == null) {
+			return false;
+		}
+		if(clock.getAsLong() - cachedAt >= ttlMillis) {
+			entries.remove(key);
+			return false;
+		}
+		hits.increment();
+		return true;
+	}
+
+	public synchronized void put(String system, String command) {
+		entries.put(key(system, command), clock.getAsLong());
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public String getStatsText() {
+		return String.format("[Non Command Cache] size: %d / %d, hit: %d", size(), maxSize, getHitCount());
+	}
+
+	private static String key(String system, String command) {
+		return system + "\n" + command;
+	}
+}
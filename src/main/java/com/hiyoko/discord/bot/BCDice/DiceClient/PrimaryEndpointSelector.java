@@ -0,0 +1,19 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+
+/**
+ * Always use the primary server. Others are used only for the failover.
+ * @author Shunshun94
+ *
+ */
+public class PrimaryEndpointSelector implements EndpointSelector {
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, int primary, Endpoint avoid) {
+		Endpoint target = endpoints.get(primary % endpoints.size());
+		if(target == avoid && endpoints.size() > 1) {
+			return endpoints.get((primary + 1) % endpoints.size());
+		}
+		return target;
+	}
+}
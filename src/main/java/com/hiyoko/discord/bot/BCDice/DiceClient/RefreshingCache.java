@@ -0,0 +1,100 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for one value loaded from BCDice-API.
+ * <ul>
+ * <li>Within ttl, the cached value is returned without the request.</li>
+ * <li>After ttl, the stale value is returned and the value is refreshed in background.</li>
+ * <li>Without any value, the caller waits for the load. Concurrent callers share one request.</li>
+ * </ul>
+ * A failed refresh keeps the stale value.
+ * @author Shunshun94
+ *
+ * @param <T> type of the cached value
+ */
+public class RefreshingCache<T> {
+	private static final Logger logger = LoggerFactory.getLogger(RefreshingCache.class);
+	private final String name;
+	private final long ttlMillis;
+	private final LongSupplier clock;
+	private volatile T value;
+	private volatile long loadedAt;
+	private CompletableFuture<T> loading;
+	private long generation = 0;
+
+	/**
+	 * @param name name for the log
+	 * @param ttlMillis milliseconds while the value is fresh
+	 * @param clock current time in milliseconds
+	 */
+	public RefreshingCache(String name, long ttlMillis, LongSupplier clock) {
+		this.name = name;
+		this.ttlMillis = ttlMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param loader request to load the value
+	 * @return the cached value or the loaded value
+	 */
+	public CompletableFuture<T> get(Supplier<CompletableFuture<T>> loader) {
+		T current = value;
+		if(current != null && clock.getAsLong() - loadedAt < ttlMillis) {
+			return CompletableFuture.completedFuture(current);
+		}
+		CompletableFuture<T> load = startLoad(loader);
+		return current == null ? load : CompletableFuture.completedFuture(current);
+	}
+
+	private synchronized CompletableFuture<T> startLoad(Supplier<CompletableFuture<T>> loader) {
+		if(loading != null) {
+			return loading;
+		}
+		long loadingGeneration = generation;
+		CompletableFuture<T> load = loader.get();
+		loading = load;
+		load.whenComplete((loaded, e) -> onLoaded(load, loadingGeneration, loaded, e));
+		return load;
+	}
+
+	private synchronized void onLoaded(CompletableFuture<T> load, long loadingGeneration, T loaded, Throwable e) {
+		if(loading == load) {
+			loading = null;
+		}
+		if(loadingGeneration != generation) {
+			// invalidated while loading. The result may come from the old server.
+			return;
+		}
+		if(e != null) {
+			if(value != null) {
+				logger.warn(String.format("Failed to refresh %s. The cached value is used: %s", name, AsyncUtil.unwrap(e).getMessage()));
+			}
+			return;
+		}
+		value = loaded;
+		loadedAt = clock.getAsLong();
+	}
+
+	/**
+	 * Drop the cached value. The loading value is also ignored.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		value = null;
+		loading = null;
+	}
+
+	/**
+	 * @return the cached value. If nothing is cached, null
+	 */
+	public T peek() {
+		return value;
+	}
+}
@@ -0,0 +1,51 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.hiyoko.discord.bot.BCDice.Metrics.Counter;
+import com.hiyoko.discord.bot.BCDice.Metrics.Histogram;
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
+
+/**
+ * The metrics of the requests to one API of one server.
+ * It's kept by Endpoint, so that a response only reads the counter of its status from an array.
+ * @author Shunshun94
+ *
+ */
+class RequestMetrics {
+	/**
+	 * The status of the request which has no response
+	 */
+	static final int ERROR = 0;
+	private static final int MAX_STATUS = 600;
+	private final MetricsRegistry registry;
+	private final String server;
+	private final String api;
+	private final Histogram latency;
+	private final AtomicReferenceArray<Counter> requests = new AtomicReferenceArray<Counter>(MAX_STATUS);
+
+	RequestMetrics(MetricsRegistry registry, String server, String api) {
+		this.registry = registry;
+		this.server = server;
+		this.api = api;
+		this.latency = registry.histogram("bcdice_api_request_seconds", "Latency of the requests to BCDice-API",
+				"server", server, "api", api);
+	}
+
+	/**
+	 * @param status the HTTP status code. If no response is received, ERROR
+	 * @param startedNanos the value of System.nanoTime when the request is started
+	 */
+	void record(int status, long startedNanos) {
+		int slot = (status > 0 && status < MAX_STATUS) ? status : ERROR;
+		Counter counter = requests.get(slot);
+		if(counter == null) {
+			// The registry returns the same counter, so it's OK that two threads look it up at once
+			counter = registry.counter("bcdice_api_requests_total", "Requests to BCDice-API by server, API and HTTP status",
+					"server", server, "api", api, "status", slot == ERROR ? "error" : String.valueOf(slot));
+			requests.set(slot, counter);
+		}
+		counter.increment();
+		latency.observeSince(startedNanos);
+	}
+}
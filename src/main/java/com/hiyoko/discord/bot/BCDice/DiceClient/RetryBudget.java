@@ -0,0 +1,63 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limit of the retries. Each request deposits ratio and each retry withdraws 1.
+ * minPerSecond retries are always allowed so that a quiet bot still can retry.
+ * It keeps the retries under a fixed share of the traffic when the server is struggling.
+ * @author Shunshun94
+ *
+ */
+public class RetryBudget {
+	private final double ratio;
+	private final double minPerSecond;
+	private final double maxBalance;
+	private final LongSupplier clock;
+	private double balance;
+	private long lastRefill;
+
+	/**
+	 * @param ratio retries allowed for each request
+	 * @param minPerSecond retries allowed for each second regardless of the traffic
+	 * @param clock current time in milliseconds
+	 */
+	public RetryBudget(double ratio, double minPerSecond, LongSupplier clock) {
+		this.ratio = ratio;
+		this.minPerSecond = minPerSecond;
+		this.maxBalance = Math.max(10, minPerSecond * 10);
+		this.clock = clock;
+		this.balance = maxBalance;
+		this.lastRefill = clock.getAsLong();
+	}
+
+	public synchronized void onRequest() {
+		refill();
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+
+	/**
+	 * @return If a retry is allowed, true. The budget is consumed.
+	 */
+	public synchronized boolean tryWithdraw() {
+		refill();
+		if(balance >= 1) {
+			balance -= 1;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized double getBalance() {
+		refill();
+		return balance;
+	}
+
+	private void refill() {
+		long now = clock.getAsLong();
+		if(now > lastRefill) {
+			balance = Math.min(maxBalance, balance + (now - lastRefill) * minPerSecond / 1000.0);
+			lastRefill = now;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Decide whether the failed request is retried and how long it waits.
+ * The wait grows exponentially from baseDelayMillis up to maxDelayMillis,
+ * and the half of it is random so that the retries from many channels don't come at once.
+ * @author Shunshun94
+ *
+ */
+public class RetryPolicy {
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final RetryBudget budget;
+
+	/**
+	 * @param maxAttempts max count of the requests including the first one
+	 * @param baseDelayMillis wait before the first retry
+	 * @param maxDelayMillis max wait before a retry
+	 * @param budget limit of the retries
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, RetryBudget budget) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(0, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+		this.budget = budget;
+	}
+
+	/**
+	 * The policy configured by the environment variables
+	 * BCDICE_RETRY_MAX_ATTEMPTS (default 6), BCDICE_RETRY_BASE_DELAY (ms, default 100), BCDICE_RETRY_MAX_DELAY (ms, default 3000),
+	 * BCDICE_RETRY_BUDGET_RATIO (default 0.2) and BCDICE_RETRY_BUDGET_MIN_PER_SECOND (default 5).
+	 * @return the policy
+	 */
+	public static RetryPolicy fromEnv() {
+		double ratio;
+		try {
+			ratio = Double.parseDouble(EnvUtil.getString("BCDICE_RETRY_BUDGET_RATIO", "0.2"));
+		} catch (NumberFormatException e) {
+			ratio = 0.2;
+		}
+		return new RetryPolicy(
+				EnvUtil.getInt("BCDICE_RETRY_MAX_ATTEMPTS", 6),
+				EnvUtil.getLong("BCDICE_RETRY_BASE_DELAY", 100),
+				EnvUtil.getLong("BCDICE_RETRY_MAX_DELAY", 3000),
+				new RetryBudget(ratio, EnvUtil.getInt("BCDICE_RETRY_BUDGET_MIN_PER_SECOND", 5), System::currentTimeMillis));
+	}
+
+	/**
+	 * Call it for each new request, not for retries.
+	 */
+	public void onRequest() {
+		budget.onRequest();
+	}
+
+	/**
+	 * @param status HTTP status code
+	 * @param hasAlternative If another server can be used, true
+	 * @return If the request should be retried, true
+	 */
+	public boolean isRetryableStatus(int status, boolean hasAlternative) {
+		if(status == 502 || status == 503 || status == 504) {
+			return true;
+		}
+		// Other 5XX can be caused by the command itself, so only another server is tried
+		return hasAlternative && status >= 500 && status < 600;
+	}
+
+	/**
+	 * @param e thrown exception
+	 * @return If the request should be retried, true
+	 */
+	public boolean isRetryableException(Throwable e) {
+		return (e instanceof ProcessingException) || (e instanceof IOException);
+	}
+
+	/**
+	 * @param attempt count of the requests already sent
+	 * @return If one more request can be sent, true. The retry budget is consumed.
+	 */
+	public boolean tryRetry(int attempt) {
+		return attempt < maxAttempts && budget.tryWithdraw();
+	}
+
+	/**
+	 * @param attempt count of the requests already sent
+	 * @return wait before the next request in milliseconds
+	 */
+	public long getDelayMillis(int attempt) {
+		long exponential = baseDelayMillis << Math.min(attempt - 1, 20);
+		long capped = Math.min(maxDelayMillis, exponential);
+		long half = capped / 2;
+		return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+}
@@ -0,0 +1,23 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Use all servers in turn.
+ * @author Shunshun94
+ *
+ */
+public class RoundRobinEndpointSelector implements EndpointSelector {
+	private final AtomicInteger counter = new AtomicInteger(0);
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, int primary, Endpoint avoid) {
+		int size = endpoints.size();
+		Endpoint target = endpoints.get(Math.floorMod(counter.getAndIncrement(), size));
+		if(target == avoid && size > 1) {
+			return endpoints.get(Math.floorMod(counter.getAndIncrement(), size));
+		}
+		return target;
+	}
+}
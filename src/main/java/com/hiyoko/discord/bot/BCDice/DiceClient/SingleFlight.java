@@ -0,0 +1,81 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent calls with the same key share one request and its result or error.
+ * The key is forgotten when the request is done, so nothing is cached.
+ * Don't use it for the dice rolls. Each roll must be sent.
+ * @author Shunshun94
+ *
+ */
+public class SingleFlight {
+	private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<String, CompletableFuture<?>>();
+	private final LongAdder started = new LongAdder();
+	private final LongAdder shared = new LongAdder();
+
+	/**
+	 * @param key the request. Calls with the same key get the same result
+	 * @param request called only when no request with the key is in flight
+	 * @return future of the result. Cancelling it doesn't cancel the shared request
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> request) {
+		CompletableFuture<T> placeholder = new CompletableFuture<T>();
+		CompletableFuture<T> current = (CompletableFuture<T>) inFlight.putIfAbsent(key, placeholder);
+		if(current != null) {
+			shared.increment();
+			return current.thenApply(Function.identity());
+		}
+		started.increment();
+		CompletableFuture<T> result;
+		try {
+			result = request.get();
+		} catch (RuntimeException e) {
+			result = AsyncUtil.failed(e);
+		}
+		result.whenComplete((value, e) -> {
+			inFlight.remove(key, placeholder);
+			if(e != null) {
+				placeholder.completeExceptionally(AsyncUtil.unwrap(e));
+			} else {
+				placeholder.complete(value);
+			}
+		});
+		return placeholder.thenApply(Function.identity());
+	}
+
+	/**
+	 * Forget the requests in flight. The next calls send new requests.
+	 */
+	public void clear() {
+		inFlight.clear();
+	}
+
+	/**
+	 * @return count of the requests in flight
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+
+	public long getStartedCount() {
+		return started.sum();
+	}
+
+	/**
+	 * @return count of the calls which shared the request of another call
+	 */
+	public long getSharedCount() {
+		return shared.sum();
+	}
+
+	public String getStatsText() {
+		return String.format("[Single Flight] requests: %d / shared: %d / in flight: %d", getStartedCount(), getSharedCount(), size());
+	}
+}
@@ -0,0 +1,136 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+
+/**
+ * Size bounded LRU cache of SystemInfo keyed by server URL and game type.
+ * "System not found" is also cached for notFoundTtlMillis so that typos don't call the API each time.
+ * @author Shunshun94
+ *
+ */
+public class SystemInfoCache {
+	private final int maxSize;
+	private final long notFoundTtlMillis;
+	private final LongSupplier clock;
+	private final Map<String, Entry> entries;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder notFoundHits = new LongAdder();
+
+	/**
+	 * @param maxSize max count of the cached systems
+	 * @param notFoundTtlMillis milliseconds to remember "System not found"
+	 * @param clock current time in milliseconds
+	 */
+	public SystemInfoCache(int maxSize, long notFoundTtlMillis, LongSupplier clock) {
+		this.maxSize = Math.max(1, maxSize);
+		this.notFoundTtlMillis = notFoundTtlMillis;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > SystemInfoCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * The cache configured by BCDICE_SYSTEMINFO_CACHE_SIZE (default 256)
+	 * and BCDICE_SYSTEMINFO_NOT_FOUND_TTL (seconds, default 600).
+	 */
+	public SystemInfoCache() {
+		this(EnvUtil.getInt("BCDICE_SYSTEMINFO_CACHE_SIZE", 256),
+			EnvUtil.getLong("BCDICE_SYSTEMINFO_NOT_FOUND_TTL", 600) * 1000,
+			System::currentTimeMillis);
+	}
+
+	/**
+	 * @param server BCDice-API server URL
+	 * @param gameType game type
+	 * @return the cached entry. If nothing is cached, null
+	 */
+	public synchronized Entry get(String server, String gameType) {
+		String key = key(server, gameType);
+		Entry entry = entries.get(key);
+		if(entry != null && entry.info == null && clock.getAsLong() - entry.cachedAt >= notFoundTtlMillis) {
+			entries.remove(key);
+			entry = null;
+		}
+		if(entry == null) {
+			misses.increment();
+		} else if(entry.info == null) {
+			notFoundHits.increment();
+		} else {
+			hits.increment();
+		}
+		return entry;
+	}
+
+	public synchronized boolean contains(String server, String gameType) {
+		return entries.containsKey(key(server, gameType));
+	}
+
+	public synchronized void put(String server, String gameType, SystemInfo info) {
+		entries.put(key(server, gameType), new Entry(info, clock.getAsLong()));
+	}
+
+	public synchronized void putNotFound(String server, String gameType) {
+		entries.put(key(server, gameType), new Entry(null, clock.getAsLong()));
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getNotFoundHitCount() {
+		return notFoundHits.sum();
+	}
+
+	public String getStatsText() {
+		return String.format("[SystemInfo Cache] size: %d / %d, hit: %d, not found hit: %d, miss: %d",
+				size(), maxSize, getHitCount(), getNotFoundHitCount(), getMissCount());
+	}
+
+	private static String key(String server, String gameType) {
+		return server + "\n" + gameType;
+	}
+
+	/**
+	 * Cached SystemInfo. If the system is not found, info is null.
+	 */
+	public static class Entry {
+		private final SystemInfo info;
+		private final long cachedAt;
+
+		private Entry(SystemInfo info, long cachedAt) {
+			this.info = info;
+			this.cachedAt = cachedAt;
+		}
+
+		public SystemInfo getInfo() {
+			return info;
+		}
+
+		public boolean isNotFound() {
+			return info == null;
+		}
+	}
+}
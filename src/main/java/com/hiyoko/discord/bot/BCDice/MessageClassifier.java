@@ -0,0 +1,287 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classify a Discord message in one pass: admin command, multiroll, original dice bot, dice command or chat.
+ * Most messages are chat. They are read by the index without substrings,
+ * and the chat which can't start a command of the system is rejected by its first character, so nothing is allocated for it.
+ * @author Shunshun94
+ *
+ */
+public class MessageClassifier {
+	private static final String ADMIN_PREFIX = "bcdice";
+	private static final int MAX_MULTIROLL = 20;
+	private final CommandChecker commandChecker;
+	private final DiceBotFinder diceBotFinder;
+
+	public enum Kind {
+		/** bcdice ... */
+		ADMIN,
+		/** 3 2d6 */
+		MULTIROLL_COUNT,
+		/** [a,b,c] 2d6 */
+		MULTIROLL_TARGETS,
+		/** the name of the original dice bot */
+		ORIGINAL_DICEBOT,
+		/** the command sent to BCDice-API */
+		DICE_COMMAND,
+		/** chat */
+		IGNORE
+	}
+
+	/**
+	 * Check whether the message can be a command of the system of the channel.
+	 */
+	@FunctionalInterface
+	public interface CommandChecker {
+		/**
+		 * @param message the message
+		 * @param start the index where the command starts
+		 * @param end the index where the command ends
+		 * @param channel the channel of the message
+		 * @return If the command can be a dice command, true
+		 */
+		boolean isDiceCommand(String message, int start, int end, String channel);
+	}
+
+	/**
+	 * Find the original dice bot which the message starts with.
+	 */
+	@FunctionalInterface
+	public interface DiceBotFinder {
+		/**
+		 * @return the name of the dice bot. If nothing matches, empty string
+		 */
+		String findDiceBot(CharSequence input, int start, int end);
+	}
+
+	/**
+	 * @param commandChecker checker of the dice commands
+	 * @param diceBotFinder finder of the original dice bots
+	 */
+	public MessageClassifier(CommandChecker commandChecker, DiceBotFinder diceBotFinder) {
+		this.commandChecker = commandChecker;
+		this.diceBotFinder = diceBotFinder;
+	}
+
+	/**
+	 * @param message the message
+	 * @return If the message is "bcdice" or starts with "bcdice ", true
+	 */
+	public static boolean isAdminCommand(String message) {
+		return message.regionMatches(true, 0, ADMIN_PREFIX, 0, ADMIN_PREFIX.length()) &&
+				(message.length() == ADMIN_PREFIX.length() || message.charAt(ADMIN_PREFIX.length()) == ' ');
+	}
+
+	/**
+	 * @param message the message
+	 * @param channel the channel of the message
+	 * @param rollCommand the prefix of the dice commands. If it's empty, no prefix is required
+	 * @param suppressed If false, all messages are sent to BCDice-API
+	 * @return the classification
+	 */
+	public Classification classify(String message, String channel, String rollCommand, boolean suppressed) {
+		if(isAdminCommand(message)) {
+			return Classification.ADMIN;
+		}
+		return classifyRoll(message, channel, rollCommand, suppressed);
+	}
+
+	/**
+	 * Same as classify, but the admin command is not checked.
+	 */
+	public Classification classifyRoll(String message, String channel, String rollCommand, boolean suppressed) {
+		int end = trimEnd(message);
+		int start = skipWhiteSpace(message, 0, end);
+		if(! rollCommand.isEmpty()) {
+			if(! message.startsWith(rollCommand, start)) {
+				return Classification.IGNORE;
+			}
+			start = skipWhiteSpace(message, start + rollCommand.length(), end);
+		}
+
+		int digitsEnd = start;
+		while(digitsEnd < end && message.charAt(digitsEnd) >= '0' && message.charAt(digitsEnd) <= '9') {
+			digitsEnd++;
+		}
+		if(digitsEnd > start && digitsEnd < end && message.charAt(digitsEnd) == ' ') {
+			Classification each = classifyEach(message, channel, rollCommand, suppressed, digitsEnd + 1, end);
+			if(each.kind == Kind.IGNORE) {
+				return each;
+			}
+			return new Classification(Kind.MULTIROLL_COUNT, null, parseCount(message, start, digitsEnd), null, each);
+		}
+
+		if(start < end && message.charAt(start) == '[') {
+			int close = findTargetsEnd(message, start, end);
+			if(close > 0) {
+				Classification each = classifyEach(message, channel, rollCommand, suppressed, close + 2, end);
+				if(each.kind == Kind.IGNORE) {
+					return each;
+				}
+				String[] targets = message.substring(start + 1, close).split(",");
+				return new Classification(Kind.MULTIROLL_TARGETS, null, targets.length, targets, each);
+			}
+		}
+		return classifyCommand(message, channel, rollCommand, suppressed, start, end);
+	}
+
+	/**
+	 * Classify the message as one command. The multiroll prefix is not checked.
+	 */
+	public Classification classifyCommand(String message, String channel, String rollCommand, boolean suppressed) {
+		int end = trimEnd(message);
+		int start = skipWhiteSpace(message, 0, end);
+		if(! rollCommand.isEmpty()) {
+			if(! message.startsWith(rollCommand, start)) {
+				return Classification.IGNORE;
+			}
+			start = skipWhiteSpace(message, start + rollCommand.length(), end);
+		}
+		return classifyCommand(message, channel, rollCommand, suppressed, start, end);
+	}
+
+	private Classification classifyCommand(String message, String channel, String rollCommand, boolean suppressed, int start, int end) {
+		String diceBot = diceBotFinder.findDiceBot(message, start, end);
+		if(! diceBot.isEmpty()) {
+			return new Classification(Kind.ORIGINAL_DICEBOT, diceBot, 1, null, null);
+		}
+		boolean shouldRoll = (! suppressed) || (! rollCommand.isEmpty()) ||
+				commandChecker.isDiceCommand(message, start, end, channel);
+		if(! shouldRoll) {
+			return Classification.IGNORE;
+		}
+		return new Classification(Kind.DICE_COMMAND, message.substring(start, end), 1, null, null);
+	}
+
+	/**
+	 * The command rolled for each label of the multiroll
+	 */
+	private Classification classifyEach(String message, String channel, String rollCommand, boolean suppressed, int start, int end) {
+		return classifyCommand(message, channel, rollCommand, suppressed, skipWhiteSpace(message, start, end), end);
+	}
+
+	/**
+	 * Same as the greedy ^\[(.+)\] on the message
+	 * @return the index of the last ] which is followed by a white space. If it's not found, -1
+	 */
+	private static int findTargetsEnd(String message, int start, int end) {
+		int found = -1;
+		for(int i = start + 2; i + 1 < end; i++) {
+			char c = message.charAt(i - 1);
+			if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				break;
+			}
+			if(message.charAt(i) == ']' && message.charAt(i + 1) == ' ') {
+				found = i;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return the count. If it's too large for int, Integer.MAX_VALUE
+	 */
+	private static int parseCount(String message, int start, int end) {
+		long count = 0;
+		for(int i = start; i < end; i++) {
+			count = count * 10 + (message.charAt(i) - '0');
+			if(count > Integer.MAX_VALUE) {
+				return Integer.MAX_VALUE;
+			}
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Same as String.trim
+	 */
+	private static int skipWhiteSpace(String message, int start, int end) {
+		while(start < end && message.charAt(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimEnd(String message) {
+		int end = message.length();
+		while(end > 0 && message.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * The result of the classification
+	 */
+	public static class Classification {
+		private static final Classification ADMIN = new Classification(Kind.ADMIN, null, 0, null, null);
+		private static final Classification IGNORE = new Classification(Kind.IGNORE, null, 0, null, null);
+		private final Kind kind;
+		private final String command;
+		private final int count;
+		private final String[] targets;
+		private final Classification each;
+
+		private Classification(Kind kind, String command, int count, String[] targets, Classification each) {
+			this.kind = kind;
+			this.command = command;
+			this.count = count;
+			this.targets = targets;
+			this.each = each;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return DICE_COMMAND: the command without the prefix. ORIGINAL_DICEBOT: the name of the dice bot. Others: null
+		 */
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return count of the rolls
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return If the multiroll has more than 20 rolls, true
+		 */
+		public boolean isTooMany() {
+			return count > MAX_MULTIROLL;
+		}
+
+		/**
+		 * @return labels of the multiroll. 1, 2, 3... for MULTIROLL_COUNT and the targets for MULTIROLL_TARGETS
+		 */
+		public List<String> getLabels() {
+			if(targets != null) {
+				return Arrays.asList(targets);
+			}
+			List<String> labels = new ArrayList<String>();
+			for(int i = 0; i < count; i++) {
+				labels.add(String.valueOf(i + 1));
+			}
+			return labels;
+		}
+
+		/**
+		 * @return the command rolled for each label of the multiroll. For the other kinds, null
+		 */
+		public Classification getEach() {
+			return each;
+		}
+
+		public String toString() {
+			return String.format("%s %s x%d", kind, command == null ? each : command, count);
+		}
+	}
+}
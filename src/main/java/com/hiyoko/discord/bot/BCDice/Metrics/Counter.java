@@ -0,0 +1,29 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter which only goes up. It's striped by LongAdder, so many threads can count it at once.
+ * @author Shunshun94
+ *
+ */
+public class Counter implements Metric {
+	private final LongAdder count = new LongAdder();
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long value) {
+		count.add(value);
+	}
+
+	public long get() {
+		return count.sum();
+	}
+
+	@Override
+	public void write(StringBuilder sb, String name, String labels) {
+		sb.append(name).append(labels).append(' ').append(get()).append('\n');
+	}
+}
@@ -0,0 +1,85 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed buckets.
+ * Each bucket is a LongAdder, so observe doesn't lock and doesn't allocate.
+ * @author Shunshun94
+ *
+ */
+public class Histogram implements Metric {
+	/**
+	 * Buckets in seconds for the requests and the Discord messages
+	 */
+	public static final double[] LATENCY_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+	private final double[] bounds;
+	private final long[] boundNanos;
+	// counts[i] is the count of bucket i only. The last one is +Inf
+	private final LongAdder[] counts;
+	private final LongAdder sumNanos = new LongAdder();
+
+	/**
+	 * @param bounds upper bounds of the buckets in seconds in ascending order
+	 */
+	public Histogram(double[] bounds) {
+		this.bounds = bounds.clone();
+		this.boundNanos = new long[bounds.length];
+		for(int i = 0; i < bounds.length; i++) {
+			boundNanos[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+		}
+		this.counts = new LongAdder[bounds.length + 1];
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	public Histogram() {
+		this(LATENCY_BUCKETS);
+	}
+
+	/**
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void observeNanos(long nanos) {
+		int i = 0;
+		while(i < boundNanos.length && nanos > boundNanos[i]) {
+			i++;
+		}
+		counts[i].increment();
+		sumNanos.add(nanos);
+	}
+
+	/**
+	 * @param startedNanos the value of System.nanoTime when it started
+	 */
+	public void observeSince(long startedNanos) {
+		observeNanos(System.nanoTime() - startedNanos);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for(LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+
+	@Override
+	public void write(StringBuilder sb, String name, String labels) {
+		String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+		long cumulative = 0;
+		for(int i = 0; i < counts.length; i++) {
+			cumulative += counts[i].sum();
+			String le = i < bounds.length ? Double.toString(bounds[i]) : "+Inf";
+			sb.append(name).append("_bucket").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+		}
+		sb.append(name).append("_sum").append(labels).append(' ').append(getSumNanos() / 1000000000.0).append('\n');
+		sb.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+	}
+}
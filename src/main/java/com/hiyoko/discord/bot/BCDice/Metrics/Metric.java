@@ -0,0 +1,15 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+/**
+ * One sample or one set of samples in the Prometheus text format.
+ * @author Shunshun94
+ *
+ */
+interface Metric {
+	/**
+	 * @param sb the output
+	 * @param name the name of the metric
+	 * @param labels the labels as {key="value"}. If there is no label, empty string
+	 */
+	void write(StringBuilder sb, String name, String labels);
+}
@@ -0,0 +1,147 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of the bot. They are written in the Prometheus text format.
+ * Get the counter or the histogram once and keep it for the hot path, because the lookup builds the key.
+ * @author Shunshun94
+ *
+ */
+public class MetricsRegistry {
+	private static final MetricsRegistry SHARED = new MetricsRegistry();
+	private final Map<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+	/**
+	 * @return the registry shared in this process
+	 */
+	public static MetricsRegistry getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Metrics with the same name and the different labels
+	 */
+	private static class Family {
+		private final String help;
+		private final String type;
+		private final Map<String, Metric> children = new ConcurrentHashMap<String, Metric>();
+
+		private Family(String help, String type) {
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private Family getFamily(String name, String help, String type) {
+		Family family = families.computeIfAbsent(name, k -> new Family(help, type));
+		if(! family.type.equals(type)) {
+			throw new IllegalArgumentException(String.format("%s is already registered as %s", name, family.type));
+		}
+		return family;
+	}
+
+	/**
+	 * @param name the name of the metric
+	 * @param help the description
+	 * @param labels the pairs of the label name and the value
+	 * @return the counter. The same name and labels return the same counter
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) getFamily(name, help, "counter").children.computeIfAbsent(formatLabels(labels), k -> new Counter());
+	}
+
+	/**
+	 * @param name the name of the metric. It should end with _seconds
+	 * @param help the description
+	 * @param labels the pairs of the label name and the value
+	 * @return the histogram with Histogram.LATENCY_BUCKETS. The same name and labels return the same histogram
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return (Histogram) getFamily(name, help, "histogram").children.computeIfAbsent(formatLabels(labels), k -> new Histogram());
+	}
+
+	/**
+	 * Register the histogram made by another class. The old one with the same name and labels is replaced.
+	 */
+	public void register(String name, String help, Histogram histogram, String... labels) {
+		getFamily(name, help, "histogram").children.put(formatLabels(labels), histogram);
+	}
+
+	/**
+	 * Register the value read at each scrape. The old one with the same name and labels is replaced.
+	 */
+	public void gauge(String name, String help, LongSupplier value, String... labels) {
+		getFamily(name, help, "gauge").children.put(formatLabels(labels), new FunctionMetric(value));
+	}
+
+	/**
+	 * Register the counter counted by another class. The old one with the same name and labels is replaced.
+	 */
+	public void counter(String name, String help, LongSupplier value, String... labels) {
+		getFamily(name, help, "counter").children.put(formatLabels(labels), new FunctionMetric(value));
+	}
+
+	private static class FunctionMetric implements Metric {
+		private final LongSupplier value;
+
+		private FunctionMetric(LongSupplier value) {
+			this.value = value;
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, String labels) {
+			sb.append(name).append(labels).append(' ').append(value.getAsLong()).append('\n');
+		}
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format (version 0.0.4)
+	 */
+	public String scrape() {
+		StringBuilder sb = new StringBuilder();
+		List<String> names = new ArrayList<String>(families.keySet());
+		Collections.sort(names);
+		for(String name : names) {
+			Family family = families.get(name);
+			sb.append("# HELP ").append(name).append(' ').append(escapeHelp(family.help)).append('\n');
+			sb.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+			List<String> labels = new ArrayList<String>(family.children.keySet());
+			Collections.sort(labels);
+			for(String label : labels) {
+				family.children.get(label).write(sb, name, label);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String formatLabels(String[] labels) {
+		if(labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be pairs of the name and the value");
+		}
+		if(labels.length == 0) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder("{");
+		for(int i = 0; i < labels.length; i += 2) {
+			if(i > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[i]).append("=\"").append(escapeLabel(labels[i + 1])).append('"');
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String escapeLabel(String value) {
+		return escapeHelp(value).replace("\"", "\\\"");
+	}
+
+	private static String escapeHelp(String value) {
+		return value.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+}
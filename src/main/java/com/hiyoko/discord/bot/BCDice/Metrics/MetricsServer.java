@@ -0,0 +1,77 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP listener which answers GET /metrics in the Prometheus text format.
+ * @author Shunshun94
+ *
+ */
+public class MetricsServer {
+	private static final Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+	private final HttpServer server;
+
+	/**
+	 * @param registry the metrics to show
+	 * @param host the address to listen
+	 * @param port the port to listen. If it's 0, a free port is used
+	 * @throws IOException When the port can't be listened
+	 */
+	public MetricsServer(MetricsRegistry registry, String host, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/metrics", exchange -> {
+			try {
+				if(! "GET".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try(OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Listen BCDICE_METRICS_HOST (default 127.0.0.1) and BCDICE_METRICS_PORT.
+	 * @return the started server. If BCDICE_METRICS_PORT is not set or the port can't be listened, null
+	 */
+	public static MetricsServer fromEnv(MetricsRegistry registry) {
+		int port = EnvUtil.getInt("BCDICE_METRICS_PORT", 0);
+		if(port <= 0) {
+			return null;
+		}
+		String host = EnvUtil.getString("BCDICE_METRICS_HOST", "127.0.0.1");
+		try {
+			MetricsServer server = new MetricsServer(registry, host, port);
+			logger.info(String.format("Metrics are published on http://%s:%d/metrics", host, server.getPort()));
+			return server;
+		} catch (IOException e) {
+			logger.error(String.format("Failed to listen %s:%d. Metrics are not published", host, port), e);
+			return null;
+		}
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,92 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+
+/**
+ * Translate the multiroll into BCDice repeat command (xN) and split its result.
+ * BCDice writes the repeat result in either of the following formats.
+ * <pre>
+ * #1
+ * (2D6) ＞ 7[3,4] ＞ 7
+ *
+ * #2
+ * (2D6) ＞ 5[1,4] ＞ 5
+ * </pre>
+ * or one line for each roll.
+ * @author Shunshun94
+ *
+ */
+public class MultirollRepeatTranslator {
+	private static final Pattern REPEAT_INDEX_LINE = Pattern.compile("^#\\d+$");
+	private static final String RESULT_PREFIX = ": ";
+
+	private MultirollRepeatTranslator() {}
+
+	/**
+	 * @param times repeat count
+	 * @param command dice command without the multiroll prefix
+	 * @return repeat command for BCDice
+	 */
+	public static String toRepeatCommand(int times, String command) {
+		return String.format("x%d %s", times, command);
+	}
+
+	/**
+	 * @param result the result of the repeat command
+	 * @param times repeat count
+	 * @return result texts for each roll. If the result can't be split into the count, null.
+	 */
+	public static List<String> split(DicerollResult result, int times) {
+		if(! result.isRolled() || result.isError()) {
+			return null;
+		}
+		String text = result.getText();
+		String prefix = "";
+		if(text.startsWith(RESULT_PREFIX)) {
+			prefix = RESULT_PREFIX;
+			text = text.substring(RESULT_PREFIX.length());
+		}
+		String[] lines = text.split("\n");
+
+		List<String> indexed = splitByIndexLine(lines, prefix);
+		if(indexed != null) {
+			return indexed.size() == times ? indexed : null;
+		}
+
+		List<String> perLine = new ArrayList<String>();
+		for(String line : lines) {
+			String trimmed = line.trim();
+			if(! trimmed.isEmpty()) {
+				perLine.add(prefix + trimmed);
+			}
+		}
+		return perLine.size() == times ? perLine : null;
+	}
+
+	private static List<String> splitByIndexLine(String[] lines, String prefix) {
+		List<String> result = new ArrayList<String>();
+		StringBuilder current = null;
+		for(String line : lines) {
+			if(REPEAT_INDEX_LINE.matcher(line.trim()).matches()) {
+				if(current != null) {
+					result.add(prefix + current.toString().trim());
+				}
+				current = new StringBuilder();
+			} else if(current != null) {
+				current.append(line).append("\n");
+			} else if(! line.trim().isEmpty()) {
+				// The text before the first index line is unknown format
+				return null;
+			}
+		}
+		if(current == null) {
+			return null;
+		}
+		result.add(prefix + current.toString().trim());
+		return result;
+	}
+}
@@ -0,0 +1,114 @@
+package com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watch the dice bot directory and tell the changed file names.
+ * The changes are collected until no event comes for debounceMillis, so that a file written in pieces is reloaded once.
+ * @author Shunshun94
+ *
+ */
+public class DiceBotDirectoryWatcher {
+	private final Logger logger = LoggerFactory.getLogger(DiceBotDirectoryWatcher.class);
+	private final Path directory;
+	private final long debounceMillis;
+	private final Consumer<Set<String>> onChange;
+	private final Runnable onOverflow;
+	private WatchService watchService;
+	private Thread thread;
+
+	/**
+	 * @param directory the watched directory
+	 * @param debounceMillis milliseconds without any event before the changes are told
+	 * @param onChange called with the changed file names
+	 * @param onOverflow called when some events are lost. The whole directory should be read again.
+	 */
+	public DiceBotDirectoryWatcher(Path directory, long debounceMillis, Consumer<Set<String>> onChange, Runnable onOverflow) {
+		this.directory = directory;
+		this.debounceMillis = debounceMillis;
+		this.onChange = onChange;
+		this.onOverflow = onOverflow;
+	}
+
+	public synchronized void start() throws IOException {
+		if(thread != null) {
+			return;
+		}
+		watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		thread = new Thread(this::watch, "bcdice-dicebot-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		if(thread == null) {
+			return;
+		}
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			logger.warn("Failed to stop watching " + directory, e);
+		}
+		thread = null;
+	}
+
+	private void watch() {
+		Set<String> changed = new HashSet<String>();
+		boolean overflow = false;
+		try {
+			while(true) {
+				WatchKey key = changed.isEmpty() && ! overflow ?
+						watchService.take() : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+				if(key == null) {
+					// no more events in debounceMillis
+					flush(changed, overflow);
+					changed = new HashSet<String>();
+					overflow = false;
+					continue;
+				}
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						overflow = true;
+					} else {
+						changed.add(((Path) event.context()).getFileName().toString());
+					}
+				}
+				if(! key.reset()) {
+					logger.warn(String.format("%s can't be watched any more", directory));
+					flush(changed, overflow);
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private void flush(Set<String> changed, boolean overflow) {
+		try {
+			if(overflow) {
+				onOverflow.run();
+			} else if(! changed.isEmpty()) {
+				onChange.accept(changed);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Failed to reload the dice bots", e);
+		}
+	}
+}
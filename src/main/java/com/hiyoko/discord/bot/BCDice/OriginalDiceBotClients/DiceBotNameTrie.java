@@ -0,0 +1,95 @@
+package com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix tree of the dice bot names.
+ * It finds the longest name at the head of the message in O(length of the message),
+ * regardless of the count of the dice bots.
+ * @author Shunshun94
+ *
+ */
+public class DiceBotNameTrie {
+	private final Node root;
+
+	/**
+	 * @param names dice bot names
+	 */
+	public DiceBotNameTrie(Collection<String> names) {
+		BuildingNode building = new BuildingNode();
+		for(String name : names) {
+			if(name.isEmpty()) {
+				continue;
+			}
+			BuildingNode current = building;
+			for(int i = 0; i < name.length(); i++) {
+				current = current.children.computeIfAbsent(name.charAt(i), c -> new BuildingNode());
+			}
+			current.name = name;
+		}
+		root = building.freeze();
+	}
+
+	/**
+	 * @param input the message
+	 * @return the longest dice bot name which the message starts with. If nothing matches, empty string
+	 */
+	public String findLongestPrefix(String input) {
+		return findLongestPrefix(input, 0, input.length());
+	}
+
+	/**
+	 * Same as findLongestPrefix(input.substring(start, end)) without the copy of the message
+	 * @param input the message
+	 * @param start index of the first character
+	 * @param end index after the last character
+	 * @return the longest dice bot name which the part of the message starts with. If nothing matches, empty string
+	 */
+	public String findLongestPrefix(CharSequence input, int start, int end) {
+		String found = "";
+		Node current = root;
+		for(int i = start; i < end; i++) {
+			int index = Arrays.binarySearch(current.keys, input.charAt(i));
+			if(index < 0) {
+				break;
+			}
+			current = current.children[index];
+			if(current.name != null) {
+				found = current.name;
+			}
+		}
+		return found;
+	}
+
+	private static class Node {
+		private final char[] keys;
+		private final Node[] children;
+		private final String name;
+
+		private Node(char[] keys, Node[] children, String name) {
+			this.keys = keys;
+			this.children = children;
+			this.name = name;
+		}
+	}
+
+	private static class BuildingNode {
+		private final Map<Character, BuildingNode> children = new TreeMap<Character, BuildingNode>();
+		private String name;
+
+		private Node freeze() {
+			char[] keys = new char[children.size()];
+			Node[] frozen = new Node[children.size()];
+			int i = 0;
+			for(Map.Entry<Character, BuildingNode> child : children.entrySet()) {
+				keys[i] = child.getKey();
+				frozen[i] = child.getValue().freeze();
+				i++;
+			}
+			return new Node(keys, frozen, name);
+		}
+	}
+}
@@ -9,35 +9,149 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.Response;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+import com.hiyoko.discord.bot.BCDice.DiceClient.HttpConnectionPool;
 import com.hiyoko.discord.bot.BCDice.dto.OriginalDiceBot;
 
 public class OriginalDiceBotClient {
 	private final Client client;
 	private final String dicebotDirectoryPath = "./originalDiceBots";
 	private final File dicebotDirectory;
-	private List<String> diceBotList;
+	// It's replaced as a whole, so the readers never see the list while it's updated
+	private volatile List<String> diceBotList;
+	private volatile DiceBotNameTrie diceBotNames;
+	private final Object diceBotListLock = new Object();
 	private final Logger logger = LoggerFactory.getLogger(OriginalDiceBotClient.class);
+	private final long cacheBudget = EnvUtil.getLong("BCDICE_ORIGINAL_DICEBOT_CACHE_MB", 32) * 1024 * 1024;
+	private long cacheUsage = 0;
+	// Compiled tables. The least recently used tables are dropped when they use more than cacheBudget.
+	private final LinkedHashMap<String, OriginalDiceBot> compiledDiceBots = new LinkedHashMap<String, OriginalDiceBot>(16, 0.75f, true);
+	// Bumped when the compiled table is dropped, so a table read before that is not cached. Guarded by compiledDiceBots.
+	private final Map<String, Long> generations = new HashMap<String, Long>();
+	private long allGeneration = 0;
+
 	public OriginalDiceBotClient() {
-		client = ClientBuilder.newBuilder().build();
+		client = HttpConnectionPool.getShared().newClient();
 		dicebotDirectory = new File(dicebotDirectoryPath);
 		if( ! dicebotDirectory.exists() ) {
 			dicebotDirectory.mkdir();
 		}
-		diceBotList = getRawDiceBotList();
+		setDiceBotList(getRawDiceBotList());
+		if(EnvUtil.getBoolean("BCDICE_ORIGINAL_DICEBOT_WATCH", true)) {
+			startWatching(EnvUtil.getLong("BCDICE_ORIGINAL_DICEBOT_WATCH_DEBOUNCE", 500));
+		}
+	}
+
+	/**
+	 * Reload the dice bots when the files in the directory are changed.
+	 * @param debounceMillis milliseconds without any change before reloading
+	 */
+	private void startWatching(long debounceMillis) {
+		DiceBotDirectoryWatcher watcher = new DiceBotDirectoryWatcher(dicebotDirectory.toPath(), debounceMillis,
+				this::reloadDiceBots, this::reloadAllDiceBots);
+		try {
+			watcher.start();
+		} catch (IOException e) {
+			logger.warn(String.format("%s を監視できません。ダイスボットの追加は再起動後に反映されます", dicebotDirectoryPath), e);
+		}
+	}
+
+	/**
+	 * The name index is built here, when the dice bots are changed, not when the messages are checked.
+	 */
+	private void setDiceBotList(List<String> list) {
+		DiceBotNameTrie names = new DiceBotNameTrie(list);
+		diceBotList = Collections.unmodifiableList(list);
+		diceBotNames = names;
+	}
+
+	/**
+	 * @param input the message
+	 * @return the longest dice bot name which the message starts with. If nothing matches, empty string
+	 */
+	public String findDiceBot(String input) {
+		return diceBotNames.findLongestPrefix(input);
+	}
+
+	/**
+	 * @param input the message
+	 * @param start index of the first character
+	 * @param end index after the last character
+	 * @return the longest dice bot name which the part of the message starts with. If nothing matches, empty string
+	 */
+	public String findDiceBot(CharSequence input, int start, int end) {
+		return diceBotNames.findLongestPrefix(input, start, end);
+	}
+
+	/**
+	 * Update only the changed dice bots. The changed tables are compiled before the new list is used.
+	 * @param names the changed file names
+	 */
+	public void reloadDiceBots(Set<String> names) {
+		List<String> compiled = new ArrayList<String>();
+		for(String name : names) {
+			evict(name);
+			if(isExist(name)) {
+				try {
+					getCompiledDiceBot(name);
+					compiled.add(name);
+				} catch (IOException e) {
+					logger.warn(e.getMessage(), e);
+				}
+			}
+		}
+		synchronized(diceBotListLock) {
+			List<String> next = new ArrayList<String>(diceBotList);
+			for(String name : names) {
+				boolean exists = isExist(name);
+				if(exists && ! next.contains(name)) {
+					next.add(name);
+				}
+				if(! exists) {
+					next.remove(name);
+				}
+			}
+			setDiceBotList(next);
+		}
+		logger.info(String.format("ダイスボットを更新しました: %s", names));
+	}
+
+	/**
+	 * Read the whole directory again.
+	 */
+	public void reloadAllDiceBots() {
+		synchronized(compiledDiceBots) {
+			compiledDiceBots.clear();
+			cacheUsage = 0;
+			allGeneration++;
+		}
+		synchronized(diceBotListLock) {
+			setDiceBotList(getRawDiceBotList());
+		}
+		logger.info("ダイスボットをすべて読み込み直しました");
 	}
 
 	private String getAttachedFile(URL url) {
 		Response response = client.target(url.toString()).request().get();
-		return response.readEntity(String.class);
+		try {
+			return response.readEntity(String.class);
+		} finally {
+			response.close();
+		}
 	}
 
 	private boolean isExist(String targetName) {
@@ -58,7 +172,7 @@ public class OriginalDiceBotClient {
 	public void registerDiceBot(URL fileUrl, String fileName) throws IOException {
 		String diceBotFile = getAttachedFile(fileUrl);
 		writeFile(fileName, diceBotFile);
-		diceBotList = getRawDiceBotList();
+		reloadDiceBots(Collections.singleton(fileName));
 		logger.info(String.format("ダイスボット [%s] を登録しました", fileName));
 	}
 
@@ -70,7 +184,7 @@ public class OriginalDiceBotClient {
 				throw new IOException(String.format("ダイスボット[%s] の削除に失敗しました", fileName), e);
 			}
 			try {
-				diceBotList = getRawDiceBotList();
+				reloadDiceBots(Collections.singleton(fileName));
 			} catch (Exception e) {
 				throw new IOException(String.format("ダイスボット[%s] の削除には成功しましたがダイスボット一覧の更新に失敗しました", fileName), e);
 			}			
@@ -79,10 +193,61 @@ public class OriginalDiceBotClient {
 		}
 	}
 
+	/**
+	 * The table is read from the file only at the first time. After that, the compiled table is used.
+	 * @param name dice bot name
+	 * @return the compiled table
+	 * @throws IOException When the dice bot is not found or failed to read
+	 */
 	public OriginalDiceBot getDiceBot(String name) throws IOException {
 		if(! diceBotList.contains(name)) {
 			throw new IOException(String.format("ダイスボット [%s] が見つかりませんでした", name));
 		}
+		return getCompiledDiceBot(name);
+	}
+
+	/**
+	 * The file is read out of the lock. If the table is evicted while it's read, the result may be older than the file,
+	 * so it's returned but not cached.
+	 */
+	private OriginalDiceBot getCompiledDiceBot(String name) throws IOException {
+		long generation;
+		synchronized(compiledDiceBots) {
+			OriginalDiceBot compiled = compiledDiceBots.get(name);
+			if(compiled != null) {
+				return compiled;
+			}
+			generation = getGeneration(name);
+		}
+		OriginalDiceBot compiled = readDiceBot(name);
+		synchronized(compiledDiceBots) {
+			if(getGeneration(name) != generation) {
+				return compiled;
+			}
+			OriginalDiceBot previous = compiledDiceBots.put(name, compiled);
+			if(previous != null) {
+				cacheUsage -= previous.getSize();
+			}
+			cacheUsage += compiled.getSize();
+			Iterator<OriginalDiceBot> iterator = compiledDiceBots.values().iterator();
+			while(cacheUsage > cacheBudget && compiledDiceBots.size() > 1 && iterator.hasNext()) {
+				OriginalDiceBot eldest = iterator.next();
+				if(eldest == compiled) {
+					continue;
+				}
+				cacheUsage -= eldest.getSize();
+				iterator.remove();
+			}
+		}
+		return compiled;
+	}
+
+	private long getGeneration(String name) {
+		Long generation = generations.get(name);
+		return allGeneration + (generation == null ? 0 : generation);
+	}
+
+	private OriginalDiceBot readDiceBot(String name) throws IOException {
 		File file = new File(String.format("%s/%s", dicebotDirectoryPath, name));
 		try (
 				FileReader fr = new FileReader(file);
@@ -91,7 +256,7 @@ public class OriginalDiceBotClient {
 			List<String> lines = new ArrayList<String>();
 			String line;
 			while((line = br.readLine()) != null) {
-				lines.add(line.replaceAll("\\\\n", "\n"));
+				lines.add(unescapeNewLine(line));
 			}
 			return new OriginalDiceBot(lines, name);
 		} catch (IOException e) {
@@ -99,6 +264,30 @@ public class OriginalDiceBotClient {
 		}
 	}
 
+	/**
+	 * Same as line.replaceAll("\\\\n", "\n") without the regular expression
+	 */
+	private static String unescapeNewLine(String line) {
+		if(line.indexOf("\\n") < 0) {
+			return line;
+		}
+		return line.replace("\\n", "\n");
+	}
+
+	/**
+	 * Drop the compiled table. The next getDiceBot reads the file again.
+	 * @param name dice bot name
+	 */
+	public void evict(String name) {
+		synchronized(compiledDiceBots) {
+			OriginalDiceBot removed = compiledDiceBots.remove(name);
+			if(removed != null) {
+				cacheUsage -= removed.getSize();
+			}
+			generations.merge(name, 1L, Long::sum);
+		}
+	}
+
 	public List<String> getRawDiceBotList() {
 		File[] list = dicebotDirectory.listFiles();
 		List<String> fileList = new ArrayList<String>();
@@ -0,0 +1,241 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+
+/**
+ * Token buckets for the requests to BCDice-API. A message takes one token for each request it sends
+ * from the bucket of the user, the bucket of the channel and the global bucket.
+ * Each bucket keeps only the time when it becomes full (GCRA), so it's updated by one CAS without locks.
+ * A full bucket is same as a new one, so it's removed from the map by the sweep.
+ * @author Shunshun94
+ *
+ */
+public class RateLimiter {
+	private static final int SWEEP_INTERVAL = 1024;
+	private final Limit userLimit;
+	private final Limit channelLimit;
+	private final Limit globalLimit;
+	private final Bucket global;
+	private final LongSupplier clock;
+	private final Map<String, Bucket> users = new ConcurrentHashMap<String, Bucket>();
+	private final Map<String, Bucket> channels = new ConcurrentHashMap<String, Bucket>();
+	private final AtomicLong acquireCount = new AtomicLong(0);
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Rate of one scope. If perMinute is 0 or less, the scope is not limited.
+	 */
+	public static class Limit {
+		private final long intervalNanos;
+		private final long burst;
+
+		/**
+		 * @param perMinute tokens refilled in one minute
+		 * @param burst max count of the tokens
+		 */
+		public Limit(long perMinute, long burst) {
+			this.intervalNanos = perMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / perMinute : 0;
+			this.burst = Math.max(1, burst);
+		}
+
+		private boolean isUnlimited() {
+			return intervalNanos == 0;
+		}
+	}
+
+	/**
+	 * Thrown when the message is over the limit.
+	 */
+	public static class RateLimitedException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final boolean first;
+
+		private RateLimitedException(String message, boolean first) {
+			super(message);
+			this.first = first;
+		}
+
+		/**
+		 * @return If the bucket was not rejecting until this message, true. The bot replies only to it so that the flood doesn't get replies.
+		 */
+		public boolean isFirst() {
+			return first;
+		}
+	}
+
+	private static class Bucket {
+		// the time when the bucket becomes full
+		private final AtomicLong fullAt;
+		private final AtomicBoolean rejecting = new AtomicBoolean(false);
+
+		private Bucket(long now) {
+			fullAt = new AtomicLong(now);
+		}
+
+		/**
+		 * @return 0 when the tokens are taken. Otherwise nanoseconds to wait for them
+		 */
+		private long tryAcquire(Limit limit, long cost, long now) {
+			long capacity = limit.burst * limit.intervalNanos;
+			while(true) {
+				long current = fullAt.get();
+				long next = Math.max(current, now) + cost * limit.intervalNanos;
+				if(next - now > capacity) {
+					return next - now - capacity;
+				}
+				if(fullAt.compareAndSet(current, next)) {
+					return 0;
+				}
+			}
+		}
+
+		private void release(Limit limit, long cost) {
+			fullAt.addAndGet(- cost * limit.intervalNanos);
+		}
+
+		private boolean isFull(long now) {
+			return fullAt.get() <= now;
+		}
+	}
+
+	/**
+	 * @param userLimit limit of each user
+	 * @param channelLimit limit of each channel
+	 * @param globalLimit limit of the whole bot
+	 * @param clock current time in nanoseconds
+	 */
+	public RateLimiter(Limit userLimit, Limit channelLimit, Limit globalLimit, LongSupplier clock) {
+		this.userLimit = userLimit;
+		this.channelLimit = channelLimit;
+		this.globalLimit = globalLimit;
+		this.clock = clock;
+		this.global = new Bucket(clock.getAsLong());
+	}
+
+	/**
+	 * The limiter configured by BCDICE_RATE_USER_PER_MINUTE (default 30), BCDICE_RATE_USER_BURST (default 40),
+	 * BCDICE_RATE_CHANNEL_PER_MINUTE (default 120), BCDICE_RATE_CHANNEL_BURST (default 80),
+	 * BCDICE_RATE_GLOBAL_PER_MINUTE (default 1200) and BCDICE_RATE_GLOBAL_BURST (default 400).
+	 * If BCDICE_RATE_LIMIT is off, nothing is limited.
+	 */
+	public static RateLimiter fromEnv() {
+		if(! EnvUtil.getBoolean("BCDICE_RATE_LIMIT", true)) {
+			return unlimited();
+		}
+		return new RateLimiter(
+				new Limit(EnvUtil.getLong("BCDICE_RATE_USER_PER_MINUTE", 30), EnvUtil.getLong("BCDICE_RATE_USER_BURST", 40)),
+				new Limit(EnvUtil.getLong("BCDICE_RATE_CHANNEL_PER_MINUTE", 120), EnvUtil.getLong("BCDICE_RATE_CHANNEL_BURST", 80)),
+				new Limit(EnvUtil.getLong("BCDICE_RATE_GLOBAL_PER_MINUTE", 1200), EnvUtil.getLong("BCDICE_RATE_GLOBAL_BURST", 400)),
+				System::nanoTime);
+	}
+
+	public static RateLimiter unlimited() {
+		return new RateLimiter(new Limit(0, 1), new Limit(0, 1), new Limit(0, 1), System::nanoTime);
+	}
+
+	/**
+	 * Take the tokens from all buckets, or from none of them.
+	 * @param user the user id. If it's null, the user is not limited
+	 * @param channel the channel id. If it's null, the channel is not limited
+	 * @param cost count of the requests sent for the message
+	 * @throws RateLimitedException When one of the buckets doesn't have enough tokens
+	 */
+	public void acquire(String user, String channel, int cost) throws RateLimitedException {
+		if(cost <= 0) {
+			return;
+		}
+		long now = clock.getAsLong();
+		if(acquireCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+			sweep(now);
+		}
+		Bucket userBucket = getBucket(users, userLimit, user, now);
+		Bucket channelBucket = getBucket(channels, channelLimit, channel, now);
+
+		String rejectedBy = null;
+		Bucket rejectedBucket = null;
+		long wait = 0;
+		if(userBucket != null && (wait = userBucket.tryAcquire(userLimit, cost, now)) > 0) {
+			rejectedBy = "あなたの";
+			rejectedBucket = userBucket;
+		} else if(channelBucket != null && (wait = channelBucket.tryAcquire(channelLimit, cost, now)) > 0) {
+			rejectedBy = "このチャンネルの";
+			rejectedBucket = channelBucket;
+			release(userBucket, userLimit, cost);
+		} else if((! globalLimit.isUnlimited()) && (wait = global.tryAcquire(globalLimit, cost, now)) > 0) {
+			rejectedBy = "ボット全体の";
+			rejectedBucket = global;
+			release(userBucket, userLimit, cost);
+			release(channelBucket, channelLimit, cost);
+		}
+
+		if(rejectedBucket == null) {
+			allowed.increment();
+			clearRejecting(userBucket);
+			clearRejecting(channelBucket);
+			clearRejecting(global);
+			return;
+		}
+		rejected.increment();
+		throw new RateLimitedException(
+				String.format("%sダイスが多すぎます。%d秒ほど待ってから振ってください", rejectedBy, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999999999L))),
+				! rejectedBucket.rejecting.getAndSet(true));
+	}
+
+	private static Bucket getBucket(Map<String, Bucket> buckets, Limit limit, String key, long now) {
+		if(key == null || limit.isUnlimited()) {
+			return null;
+		}
+		return buckets.computeIfAbsent(key, k -> new Bucket(now));
+	}
+
+	private static void release(Bucket bucket, Limit limit, long cost) {
+		if(bucket != null) {
+			bucket.release(limit, cost);
+		}
+	}
+
+	private static void clearRejecting(Bucket bucket) {
+		// read first so that the shared buckets are not written by every message
+		if(bucket != null && bucket.rejecting.get()) {
+			bucket.rejecting.set(false);
+		}
+	}
+
+	/**
+	 * Remove the full buckets. A message racing with the removal can take tokens from the removed bucket,
+	 * but the removed bucket was full, so at most one message gets free tokens.
+	 */
+	private void sweep(long now) {
+		users.values().removeIf(bucket -> bucket.isFull(now));
+		channels.values().removeIf(bucket -> bucket.isFull(now));
+	}
+
+	/**
+	 * @return count of the buckets of the users and the channels
+	 */
+	public int getBucketCount() {
+		return users.size() + channels.size();
+	}
+
+	public long getAllowedCount() {
+		return allowed.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	public String getStatsText() {
+		return String.format("[Rate Limiter] allowed: %d / rejected: %d / buckets: %d", getAllowedCount(), getRejectedCount(), getBucketCount());
+	}
+}
@@ -0,0 +1,511 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.EnvUtil;
+
+/**
+ * Results of the secret rolls. Each user recalls them by "bcdice load N".
+ * <ul>
+ * <li>Each user keeps the latest perUserLimit results in memory.</li>
+ * <li>Results older than ttl are dropped from memory.</li>
+ * <li>When the results use more than memoryBudget bytes, the oldest results are dropped.</li>
+ * </ul>
+ * If the spill file is set, each result is also appended to the file in background,
+ * and the result dropped from memory is read from the file at the offset kept for each user.
+ * The file keeps the results for spillTtl. When it grows over spillCompactBytes, the expired results are removed.
+ * @author Shunshun94
+ *
+ */
+public class SecretRollStore {
+	private static final Logger logger = LoggerFactory.getLogger(SecretRollStore.class);
+	private final int perUserLimit;
+	private final long ttlMillis;
+	private final long memoryBudget;
+	private final File spillFile;
+	private final long spillTtlMillis;
+	private final long spillCompactBytes;
+	private final LongSupplier clock;
+	// users who have results in memory
+	private final Map<String, UserResults> users = new HashMap<String, UserResults>();
+	// users whose results are all dropped from memory, in the order they are dropped
+	private final LinkedHashMap<String, RetiredUser> retired = new LinkedHashMap<String, RetiredUser>();
+	// users who have results in the spill file
+	private Map<String, SpilledResults> spilled = new HashMap<String, SpilledResults>();
+	private final ArrayDeque<Saved> order = new ArrayDeque<Saved>();
+	private final ExecutorService spillWriter;
+	private long memoryUsage = 0;
+	// only touched by the spill writer thread, or by the constructor before it's used
+	private long spillLength = 0;
+	private long compactedLength = 0;
+
+	/**
+	 * @param perUserLimit max results of one user in memory
+	 * @param ttlMillis milliseconds to keep the result in memory
+	 * @param memoryBudget max bytes of the results in memory
+	 * @param spillFile file to save the results. If null, the results are only in memory
+	 * @param spillTtlMillis milliseconds to keep the result in the file
+	 * @param clock current time in milliseconds
+	 */
+	public SecretRollStore(int perUserLimit, long ttlMillis, long memoryBudget, File spillFile, long spillTtlMillis, LongSupplier clock) {
+		this(perUserLimit, ttlMillis, memoryBudget, spillFile, spillTtlMillis, 16 * 1024 * 1024, clock);
+	}
+
+	/**
+	 * @param perUserLimit max results of one user in memory
+	 * @param ttlMillis milliseconds to keep the result in memory
+	 * @param memoryBudget max bytes of the results in memory
+	 * @param spillFile file to save the results. If null, the results are only in memory
+	 * @param spillTtlMillis milliseconds to keep the result in the file
+	 * @param spillCompactBytes bytes of the file to remove the expired results.
+	 * After that, the file is compacted again when it becomes twice as large as the compacted file
+	 * @param clock current time in milliseconds
+	 */
+	public SecretRollStore(int perUserLimit, long ttlMillis, long memoryBudget, File spillFile, long spillTtlMillis, long spillCompactBytes, LongSupplier clock) {
+		this.perUserLimit = Math.max(1, perUserLimit);
+		this.ttlMillis = ttlMillis;
+		this.memoryBudget = memoryBudget;
+		this.spillFile = spillFile;
+		this.spillTtlMillis = spillTtlMillis;
+		this.spillCompactBytes = spillCompactBytes;
+		this.clock = clock;
+		if(spillFile == null) {
+			spillWriter = null;
+		} else {
+			spillWriter = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "bcdice-secret-spill");
+				thread.setDaemon(true);
+				return thread;
+			});
+			spillLength = spillFile.length();
+			compactSpillFile();
+		}
+	}
+
+	/**
+	 * The store configured by the environment variables.
+	 * BCDICE_SECRET_PER_USER (default 100), BCDICE_SECRET_TTL_HOURS (default 24), BCDICE_SECRET_MEMORY_MB (default 16),
+	 * BCDICE_SECRET_SPILL_FILE (default none), BCDICE_SECRET_SPILL_TTL_DAYS (default 30) and BCDICE_SECRET_SPILL_COMPACT_MB (default 16).
+	 * @return the store
+	 */
+	public static SecretRollStore fromEnv() {
+		String spill = EnvUtil.getString("BCDICE_SECRET_SPILL_FILE", null);
+		return new SecretRollStore(
+				EnvUtil.getInt("BCDICE_SECRET_PER_USER", 100),
+				EnvUtil.getLong("BCDICE_SECRET_TTL_HOURS", 24) * 60 * 60 * 1000,
+				EnvUtil.getLong("BCDICE_SECRET_MEMORY_MB", 16) * 1024 * 1024,
+				spill == null ? null : new File(spill),
+				EnvUtil.getLong("BCDICE_SECRET_SPILL_TTL_DAYS", 30) * 24 * 60 * 60 * 1000,
+				EnvUtil.getLong("BCDICE_SECRET_SPILL_COMPACT_MB", 16) * 1024 * 1024,
+				System::currentTimeMillis);
+	}
+
+	/**
+	 * @param userId user unique id
+	 * @param message the result
+	 * @return The index to recall the result. It starts from 1.
+	 */
+	public synchronized int save(String userId, String message) {
+		long now = clock.getAsLong();
+		UserResults user = users.get(userId);
+		if(user == null) {
+			user = new UserResults();
+			users.put(userId, user);
+			RetiredUser retiredUser = retired.remove(userId);
+			if(retiredUser != null) {
+				user.lastIndex = retiredUser.lastIndex;
+				memoryUsage -= retiredUser.size();
+			}
+		}
+		SpilledResults spilledUser = null;
+		if(spillWriter != null) {
+			spilledUser = spilled.computeIfAbsent(userId, k -> new SpilledResults());
+			user.lastIndex = Math.max(user.lastIndex, spilledUser.lastIndex);
+		}
+		Saved saved = new Saved(userId, ++user.lastIndex, now, message);
+		user.results.addLast(saved);
+		order.addLast(saved);
+		memoryUsage += saved.size();
+		if(user.results.size() > perUserLimit) {
+			drop(user.results.removeFirst());
+		}
+		evict(now);
+		if(spilledUser != null) {
+			spilledUser.lastIndex = saved.index;
+			spilledUser.pending++;
+			// a copy, because the message of the saved result is released when it's dropped
+			Saved copy = new Saved(userId, saved.index, now, message);
+			spillWriter.submit(() -> append(copy));
+		}
+		return saved.index;
+	}
+
+	/**
+	 * @param userId user unique id
+	 * @param index the index returned by save
+	 * @return the result
+	 * @throws IOException When the result is not found
+	 */
+	public String get(String userId, int index) throws IOException {
+		synchronized(this) {
+			evict(clock.getAsLong());
+			UserResults user = users.get(userId);
+			if(user != null) {
+				for(Saved saved : user.results) {
+					if(saved.index == index) {
+						return saved.message;
+					}
+				}
+			}
+		}
+		if(spillWriter != null) {
+			try {
+				// The writer is single thread, so the results saved before are already written
+				String spilledMessage = spillWriter.submit(() -> find(userId, index)).get();
+				if(spilledMessage != null) {
+					return spilledMessage;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause().getMessage(), e.getCause());
+			}
+		}
+		throw new IOException("Not found");
+	}
+
+	/**
+	 * @return bytes of the results in memory
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/**
+	 * @return count of the results in memory
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for(UserResults user : users.values()) {
+			size += user.results.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return count of the users who have results in memory
+	 */
+	synchronized int getUserCount() {
+		return users.size();
+	}
+
+	/**
+	 * @return bytes of the spill file
+	 */
+	long getSpillLength() throws IOException {
+		try {
+			return spillWriter.submit(() -> spillLength).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private void evict(long now) {
+		Iterator<Saved> iterator = order.iterator();
+		while(iterator.hasNext()) {
+			Saved oldest = iterator.next();
+			if(oldest.dropped) {
+				iterator.remove();
+				continue;
+			}
+			if(now - oldest.savedAt < ttlMillis && memoryUsage <= memoryBudget) {
+				break;
+			}
+			iterator.remove();
+			UserResults user = users.get(oldest.userId);
+			user.results.remove(oldest);
+			drop(oldest);
+			if(user.results.isEmpty()) {
+				users.remove(oldest.userId);
+				RetiredUser retiredUser = new RetiredUser(oldest.userId, user.lastIndex, now);
+				retired.put(oldest.userId, retiredUser);
+				memoryUsage += retiredUser.size();
+			}
+		}
+		// The retired users are dropped after the results, so that "bcdice load N" doesn't show another result during ttl
+		Iterator<RetiredUser> retiredIterator = retired.values().iterator();
+		while(retiredIterator.hasNext()) {
+			RetiredUser oldest = retiredIterator.next();
+			if(now - oldest.retiredAt < ttlMillis && memoryUsage <= memoryBudget) {
+				return;
+			}
+			retiredIterator.remove();
+			memoryUsage -= oldest.size();
+		}
+	}
+
+	/**
+	 * The dropped result may stay in the order queue until it becomes the oldest, so its message is released here.
+	 */
+	private void drop(Saved saved) {
+		memoryUsage -= saved.size();
+		saved.dropped = true;
+		saved.message = null;
+	}
+
+	private void append(Saved saved) {
+		long offset = spillLength;
+		boolean written = false;
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)))) {
+			write(out, saved);
+			out.flush();
+			spillLength += out.size();
+			written = true;
+		} catch (IOException e) {
+			logger.warn("Failed to save the secret roll to " + spillFile.getPath(), e);
+			truncateSpillFile(offset);
+		}
+		synchronized(this) {
+			SpilledResults user = spilled.get(saved.userId);
+			user.pending--;
+			if(written) {
+				user.add(saved.index, offset);
+			}
+		}
+		if(spillLength >= Math.max(spillCompactBytes, compactedLength * 2)) {
+			compactSpillFile();
+		}
+	}
+
+	/**
+	 * Remove the broken record, so that the next record is written at the known offset.
+	 */
+	private void truncateSpillFile(long length) {
+		try(RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+			file.setLength(length);
+			spillLength = length;
+		} catch (IOException e) {
+			logger.warn("Failed to truncate " + spillFile.getPath(), e);
+			spillLength = spillFile.length();
+		}
+	}
+
+	private String find(String userId, int index) throws IOException {
+		long offset;
+		synchronized(this) {
+			SpilledResults user = spilled.get(userId);
+			offset = user == null ? -1 : user.getOffset(index);
+		}
+		if(offset < 0) {
+			return null;
+		}
+		try(RandomAccessFile in = new RandomAccessFile(spillFile, "r")) {
+			in.seek(offset);
+			Saved saved = read(in);
+			if(saved != null && saved.index == index && saved.userId.equals(userId) && clock.getAsLong() - saved.savedAt < spillTtlMillis) {
+				return saved.message;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drop the expired results from the file, and make the offsets and the last index of each user.
+	 * It's called by the constructor and by the spill writer thread.
+	 */
+	private void compactSpillFile() {
+		if(! spillFile.exists()) {
+			return;
+		}
+		long now = clock.getAsLong();
+		File tmp = new File(spillFile.getPath() + ".tmp");
+		Map<String, SpilledResults> compacted = new HashMap<String, SpilledResults>();
+		int kept = 0;
+		int expired = 0;
+		long length;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			Saved saved;
+			while((saved = read(in)) != null) {
+				if(now - saved.savedAt < spillTtlMillis) {
+					SpilledResults user = compacted.computeIfAbsent(saved.userId, k -> new SpilledResults());
+					user.add(saved.index, out.size());
+					user.lastIndex = Math.max(user.lastIndex, saved.index);
+					write(out, saved);
+					kept++;
+				} else {
+					expired++;
+				}
+			}
+			out.flush();
+			length = out.size();
+		} catch (IOException e) {
+			logger.warn("Failed to read the secret rolls from " + spillFile.getPath(), e);
+			tmp.delete();
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), spillFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Failed to compact " + spillFile.getPath(), e);
+			tmp.delete();
+			return;
+		}
+		synchronized(this) {
+			// The results saved but not written yet keep their last index
+			for(Map.Entry<String, SpilledResults> entry : spilled.entrySet()) {
+				if(entry.getValue().pending > 0) {
+					SpilledResults user = compacted.computeIfAbsent(entry.getKey(), k -> new SpilledResults());
+					user.lastIndex = Math.max(user.lastIndex, entry.getValue().lastIndex);
+					user.pending = entry.getValue().pending;
+				}
+			}
+			spilled = compacted;
+		}
+		spillLength = length;
+		compactedLength = length;
+		logger.info(String.format("Secret rolls in %s: %d kept, %d expired", spillFile.getPath(), kept, expired));
+	}
+
+	private static void write(DataOutputStream out, Saved saved) throws IOException {
+		byte[] message = saved.message.getBytes(StandardCharsets.UTF_8);
+		out.writeUTF(saved.userId);
+		out.writeInt(saved.index);
+		out.writeLong(saved.savedAt);
+		out.writeInt(message.length);
+		out.write(message);
+	}
+
+	/**
+	 * @return the next result. At the end of the file or the broken last record, null
+	 */
+	private static Saved read(DataInput in) throws IOException {
+		try {
+			String userId = in.readUTF();
+			int index = in.readInt();
+			long savedAt = in.readLong();
+			byte[] message = new byte[in.readInt()];
+			in.readFully(message);
+			return new Saved(userId, index, savedAt, new String(message, StandardCharsets.UTF_8));
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * It's removed when all results are dropped from memory.
+	 */
+	private static class UserResults {
+		private int lastIndex = 0;
+		private final ArrayDeque<Saved> results = new ArrayDeque<Saved>();
+	}
+
+	/**
+	 * The last index of the user whose results are all dropped. It's kept for ttl within memoryBudget,
+	 * so that the same index isn't given to another result soon.
+	 */
+	private static class RetiredUser {
+		private final String userId;
+		private final int lastIndex;
+		private final long retiredAt;
+
+		private RetiredUser(String userId, int lastIndex, long retiredAt) {
+			this.userId = userId;
+			this.lastIndex = lastIndex;
+			this.retiredAt = retiredAt;
+		}
+
+		/**
+		 * @return approximate bytes in memory
+		 */
+		private long size() {
+			return 48 + 2L * userId.length();
+		}
+	}
+
+	/**
+	 * Offsets of the results of one user in the spill file. The results of one user are written in the order of the index,
+	 * so the offsets are kept in an array from firstIndex. It uses 8 bytes for each result.
+	 */
+	private static class SpilledResults {
+		private int lastIndex = 0;
+		// results saved but not written yet
+		private int pending = 0;
+		private int firstIndex = 0;
+		private long[] offsets = new long[4];
+		private int count = 0;
+
+		private void add(int index, long offset) {
+			if(count == 0 || index < firstIndex) {
+				firstIndex = index;
+				count = 0;
+			}
+			int position = index - firstIndex;
+			if(position >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, position + 1));
+			}
+			// the results which failed to be written
+			for(int i = count; i < position; i++) {
+				offsets[i] = -1;
+			}
+			offsets[position] = offset;
+			count = Math.max(count, position + 1);
+		}
+
+		/**
+		 * @return the offset. If the result is not in the file, -1
+		 */
+		private long getOffset(int index) {
+			int position = index - firstIndex;
+			return position < 0 || position >= count ? -1 : offsets[position];
+		}
+	}
+
+	private static class Saved {
+		private final String userId;
+		private final int index;
+		private final long savedAt;
+		private String message;
+		private boolean dropped = false;
+
+		private Saved(String userId, int index, long savedAt, String message) {
+			this.userId = userId;
+			this.index = index;
+			this.savedAt = savedAt;
+			this.message = message;
+		}
+
+		/**
+		 * @return approximate bytes in memory
+		 */
+		private long size() {
+			return 64 + 2L * (message.length() + userId.length());
+		}
+	}
+}
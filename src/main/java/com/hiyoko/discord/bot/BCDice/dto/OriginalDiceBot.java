@@ -1,26 +1,77 @@
 package com.hiyoko.discord.bot.BCDice.dto;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Original dice bot table.
+ * The file is compiled once. The result values are indexed, so getResult is one lookup.
+ */
 public class OriginalDiceBot {
-	private static final Pattern ORIGINAL_DICEBOT_VALUE_LINE = Pattern.compile("^\\d+[:：]");
+	private static final Pattern ORIGINAL_DICEBOT_VALUE_LINE = Pattern.compile("^(\\d+)[:：]");
 	public static final String NO_HELP_MESSAGE = "このダイスボットにはヘルプが登録されていません";
+	private static final String NO_RESULT = "結果なし";
+	// When the values are sparse, the map is used instead of the array
+	private static final int MAX_ARRAY_WASTE = 4;
 	private final String command;
 	private final String name;
-	private final List<String> body;
+	private final String help;
+	private final int minValue;
+	private final String[] resultsByValue;
+	private final Map<String, String> otherResults;
+	private final long size;
+
 	public OriginalDiceBot(List<String> fileContents, String name) {
 		this.command = fileContents.get(0);
 		this.name = name;
-		this.body = fileContents.subList(1, fileContents.size());
-	}
+		List<String> body = fileContents.subList(1, fileContents.size());
+		this.help = extractHelp(body);
 
-	public String getCommand() {
-		return command;
+		Map<Integer, String> values = new HashMap<Integer, String>();
+		Map<String, String> others = new HashMap<String, String>();
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		long textSize = command.length() + help.length();
+		for(String line : body) {
+			Matcher matcher = ORIGINAL_DICEBOT_VALUE_LINE.matcher(line);
+			if(! matcher.find()) {
+				continue;
+			}
+			String key = matcher.group(1);
+			String text = line.substring(matcher.end());
+			Integer value = toCanonicalInt(key);
+			// The first line is used for the same value
+			if(value == null) {
+				others.putIfAbsent(key, text);
+			} else if(! values.containsKey(value)) {
+				values.put(value, text);
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			} else {
+				continue;
+			}
+			textSize += text.length();
+		}
+		if(! values.isEmpty() && (long) max - min + 1 <= (long) values.size() * MAX_ARRAY_WASTE + 16) {
+			minValue = min;
+			resultsByValue = new String[max - min + 1];
+			values.forEach((value, text) -> resultsByValue[value - minValue] = text);
+		} else {
+			minValue = 0;
+			resultsByValue = new String[0];
+			values.forEach((value, text) -> others.put(value.toString(), text));
+		}
+		otherResults = others;
+		size = 2 * textSize + 4L * resultsByValue.length + 64L * others.size();
 	}
 
-	public String getHelp() {
+	private static String extractHelp(List<String> body) {
+		if(body.isEmpty()) {
+			return NO_HELP_MESSAGE;
+		}
 		String lastLine = body.get(body.size() - 1);
 		if(lastLine.isEmpty()) {
 			return NO_HELP_MESSAGE;
@@ -33,18 +84,47 @@ public class OriginalDiceBot {
 		}
 	}
 
+	/**
+	 * @return the value. If the key has a leading zero or is too large, null.
+	 */
+	private static Integer toCanonicalInt(String key) {
+		if(key.length() > 9 || (key.length() > 1 && key.charAt(0) == '0')) {
+			return null;
+		}
+		return Integer.parseInt(key);
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+
 	public String getResult(String result) {
-		String prefixA = String.format("%s:", result);
-		String prefixB = String.format("%s：", result);
-		for(String line : body) {
-			if( line.startsWith(prefixA) ) {
-				return line.replaceFirst(prefixA, "");
+		Integer value = toCanonicalIntOrNull(result);
+		if(value != null) {
+			int index = value - minValue;
+			if(index >= 0 && index < resultsByValue.length && resultsByValue[index] != null) {
+				return resultsByValue[index];
 			}
-			if( line.startsWith(prefixB) ) {
-				return line.replaceFirst(prefixB, "");
+		}
+		String text = otherResults.get(result);
+		return text == null ? NO_RESULT : text;
+	}
+
+	private static Integer toCanonicalIntOrNull(String result) {
+		if(result.isEmpty()) {
+			return null;
+		}
+		for(int i = 0; i < result.length(); i++) {
+			char c = result.charAt(i);
+			if(c < '0' || c > '9') {
+				return null;
 			}
 		}
-		return "結果なし";
+		return toCanonicalInt(result);
 	}
 
 	public String getResultAsShow(String result) {
@@ -52,6 +132,13 @@ public class OriginalDiceBot {
 		return String.format(": (%s[%s]） → \n%s", command, result, rawResult);
 	}
 
+	/**
+	 * @return approximate bytes of this table in memory
+	 */
+	public long getSize() {
+		return size;
+	}
+
 	public String toString() {
 		return String.format("%s (command: %s)", name, command); 
 	}
@@ -2,6 +2,7 @@ package com.hiyoko.discord.bot.BCDice.dto;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonArray;
@@ -23,7 +24,8 @@ public class SystemList {
 		for(JsonValue system : systemListJson) {
 			list.add(system.asString());
 		}
-		systems = list;
+		// The list is cached and shared by the callers
+		systems = Collections.unmodifiableList(list);
 	}
 	
 	public List<String> getSystemList() {
@@ -13,6 +13,9 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -131,6 +134,7 @@ public class BCDiceCLITest{
 	public void testAdmin() {
 		assertTrue(cli.inputs("bcdice admin InvalidPassword help", "", "channel").get(0).contains("パスワードが違います"));
 		assertEquals(cli.inputs("bcdice admin " + PASSWORD + " help", "", "channel").get(0), BCDiceCLI.HELP_ADMIN);
+		assertTrue(cli.inputs("bcdice admin " + PASSWORD + " poolStats", "", "channel").get(0).startsWith("[HTTP Pool] leased: 0"));
 	}
 
 	@Test
@@ -202,8 +206,47 @@ public class BCDiceCLITest{
 		assertTrue(cli.roll("サンプルダイスボット-夜食表", "no_channel").isRolled());
 	}
 
+	@Test
+	public void testRollsAsync() throws Exception {
+		assertEquals(3, cli.rollsAsync("3 2d6", "no_channel").get().size());
+		assertTrue(cli.rollAsync("2d6", "no_channel").get().getText().contains("2D6"));
+		try {
+			cli.rollsAsync("21 サンプルダイスボット-夜食表", "no_channel").get();
+			fail("Unexpected behavior [21 サンプルダイスボット-夜食表] must be rejected");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void testParallelMultirollKeepsOrder() throws Exception {
+		cli.setMultirollParallelism(3);
+		List<DicerollResult> results = cli.rolls("[パンダ,うさぎ,コアラ,ねこ,ひよこ] 2d6", "no_channel");
+		assertEquals(5, results.size());
+		assertTrue(results.get(0).getSystem().startsWith("パンダ: "));
+		assertTrue(results.get(4).getSystem().startsWith("ひよこ: "));
+		results = cli.rolls("12 2d6", "no_channel");
+		for(int i = 0; i < results.size(); i++) {
+			assertTrue(results.get(i).getSystem().startsWith((i + 1) + ": "));
+		}
+	}
+
+	@Test
+	public void testMultirollAsRepeat() throws Exception {
+		cli.setMultirollAsRepeat(true);
+		List<DicerollResult> results = cli.rolls("3 2d6", "no_channel");
+		assertEquals(3, results.size());
+		assertEquals("(2D6) ＞ 7[3,4] ＞ 7", results.get(1).getText());
+		assertTrue(results.get(2).getSystem().startsWith("3: "));
+		// The mock can't split it. Each roll is sent
+		assertEquals(4, cli.rolls("4 2d6", "no_channel").size());
+		assertEquals(3, cli.rolls("3 サンプルダイスボット-夜食表", "no_channel").size());
+	}
+
 	@Test
 	public void testMultiroll() throws Exception {
+		// this test rolls more dice in one channel than the default limit
+		cli.setRateLimiter(RateLimiter.unlimited());
 		assertEquals(cli.rolls("2d6", "no_channel").size(), 1);
 		assertEquals(cli.rolls("3 2d6", "no_channel").size(), 3);
 		assertEquals(cli.rolls("[パンダ,うさぎ,コアラ] 2d6", "no_channel").size(), 3);
@@ -235,4 +278,18 @@ public class BCDiceCLITest{
 		assertTrue(cli.rolls(PREFIX + "6 2d6", "no_channel").get(0).getText().contains("2D6"));
 		assertTrue(cli.rolls(PREFIX + "1 1d12", "no_channel").get(0).getText().contains("1d12"));
 	}
+
+	@Test
+	public void testRateLimit() throws Exception {
+		cli.setRateLimiter(new RateLimiter(new RateLimiter.Limit(1, 20), new RateLimiter.Limit(0, 1), new RateLimiter.Limit(0, 1), System::nanoTime));
+		MessageClassifier.Classification multiroll = cli.classify("20 2d6", "channel");
+		assertEquals(20, cli.rollsAsync(multiroll, "channel", "user").get().size());
+		try {
+			cli.rollsAsync(cli.classify("2d6", "channel"), "channel", "user").join();
+			throw new Exception("Unexpected behavior [2d6] must be rate limited");
+		} catch(CompletionException e) {
+			assertTrue(e.getCause() instanceof RateLimiter.RateLimitedException);
+		}
+		assertEquals(1, cli.rollsAsync(cli.classify("2d6", "channel"), "channel", "another").get().size());
+	}
 }
@@ -0,0 +1,129 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.AsyncUtil;
+
+public class ChannelDispatcherTest {
+
+	@Test
+	public void testOrderInChannel() throws Exception {
+		ChannelDispatcher dispatcher = ChannelDispatcher.withThreadPool(4, 100);
+		List<String> posted = Collections.synchronizedList(new ArrayList<String>());
+		CompletableFuture<String> slow = new CompletableFuture<String>();
+		dispatcher.dispatch("ch", () -> slow, (value, e) -> posted.add(value));
+		// the work of the next message starts after the previous message is posted, as "bcdice set" and the next roll
+		CompletableFuture<Void> fast = dispatcher.dispatch("ch", () -> CompletableFuture.completedFuture(posted.size() == 1 ? "second" : "too early"),
+				(value, e) -> posted.add(value));
+		CompletableFuture<Void> error = dispatcher.dispatch("ch", () -> AsyncUtil.failed(new IOException("third")), (value, e) -> posted.add(e.getMessage()));
+
+		Thread.sleep(100);
+		assertTrue(posted.isEmpty());
+		assertEquals(1, dispatcher.getActiveChannelCount());
+		assertEquals(1, dispatcher.getStartedCount());
+		assertEquals(2, dispatcher.getQueueDepth());
+		slow.complete("first");
+		CompletableFuture.allOf(fast, error).get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("first", "second", "third"), posted);
+		assertEquals(3, dispatcher.getStartedCount());
+		assertEquals(0, dispatcher.getActiveChannelCount());
+	}
+
+	@Test
+	public void testParallelChannels() throws Exception {
+		ChannelDispatcher dispatcher = ChannelDispatcher.withThreadPool(4, 100);
+		List<String> posted = Collections.synchronizedList(new ArrayList<String>());
+		CompletableFuture<String> blocked = new CompletableFuture<String>();
+		dispatcher.dispatch("ch1", () -> blocked, (value, e) -> posted.add(value));
+		dispatcher.dispatch("ch2", () -> CompletableFuture.completedFuture("other"), (value, e) -> posted.add(value)).get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("other"), posted);
+		blocked.complete("blocked");
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		ChannelDispatcher dispatcher = ChannelDispatcher.withThreadPool(1, 100);
+		CountDownLatch latch = new CountDownLatch(1);
+		dispatcher.dispatch("ch1", () -> {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return CompletableFuture.completedFuture("");
+		}, (value, e) -> {});
+		CompletableFuture<Void> waiting = dispatcher.dispatch("ch2", () -> CompletableFuture.completedFuture(""), (value, e) -> {});
+		Thread.sleep(50);
+		assertEquals(1, dispatcher.getQueueDepth());
+		latch.countDown();
+		waiting.get(5, TimeUnit.SECONDS);
+		assertEquals(0, dispatcher.getQueueDepth());
+		assertEquals(2, dispatcher.getStartedCount());
+		assertTrue(dispatcher.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertTrue(dispatcher.getStatsText().startsWith("[Dispatcher] pool(1 threads, queue 100)"));
+	}
+
+	@Test
+	public void testWorkRunsInExecutor() throws Exception {
+		ChannelDispatcher dispatcher = ChannelDispatcher.withThreadPool(1, 1);
+		CompletableFuture<String> slow = new CompletableFuture<String>();
+		dispatcher.dispatch("ch", () -> slow, (value, e) -> {});
+		AtomicReference<String> thread = new AtomicReference<String>();
+		CompletableFuture<Void> next = dispatcher.dispatch("ch", () -> {
+			thread.set(Thread.currentThread().getName());
+			return CompletableFuture.completedFuture("");
+		}, (value, e) -> {});
+		// the thread completing the previous result posts it, but doesn't run the next work
+		Thread completer = new Thread(() -> slow.complete("first"), "completer");
+		completer.start();
+		next.get(5, TimeUnit.SECONDS);
+		assertTrue(thread.get(), thread.get().startsWith("bcdice-dispatch-"));
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		// 1 thread and 1 queued work, so 2 messages at most
+		ChannelDispatcher dispatcher = ChannelDispatcher.withThreadPool(1, 1);
+		CompletableFuture<String> blocked = new CompletableFuture<String>();
+		dispatcher.dispatch("ch1", () -> blocked, (value, e) -> {});
+		dispatcher.dispatch("ch2", () -> CompletableFuture.completedFuture(""), (value, e) -> {});
+
+		CountDownLatch dispatched = new CountDownLatch(1);
+		Thread listener = new Thread(() -> {
+			dispatcher.dispatch("ch3", () -> CompletableFuture.completedFuture(""), (value, e) -> {});
+			dispatched.countDown();
+		});
+		listener.start();
+		// ch2 is posted soon, so ch3 is accepted while ch1 is not posted
+		assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<String> blocked2 = new CompletableFuture<String>();
+		dispatcher.dispatch("ch4", () -> blocked2, (value, e) -> {});
+		CountDownLatch dispatched2 = new CountDownLatch(1);
+		Thread listener2 = new Thread(() -> {
+			dispatcher.dispatch("ch5", () -> CompletableFuture.completedFuture(""), (value, e) -> {});
+			dispatched2.countDown();
+		});
+		listener2.start();
+		// ch1 and ch4 are not posted, so the listener waits
+		assertFalse(dispatched2.await(200, TimeUnit.MILLISECONDS));
+		blocked.complete("");
+		assertTrue(dispatched2.await(5, TimeUnit.SECONDS));
+		blocked2.complete("");
+		assertTrue(dispatcher.getStatsText().endsWith("of 2"));
+	}
+}
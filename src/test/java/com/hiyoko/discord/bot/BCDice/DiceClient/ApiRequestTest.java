@@ -0,0 +1,38 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class ApiRequestTest {
+	@Test
+	public void testCancelBeforeStarted() {
+		Endpoint endpoint = new Endpoint("http://localhost/");
+		ApiRequest request = new ApiRequest("v1/version");
+		ApiRequest.Attempt attempt = request.start(endpoint);
+		// the executor hasn't run the request, so no callback is called
+		request.sent(attempt, new CompletableFuture<Object>());
+		assertEquals(1, endpoint.getOutstanding());
+		request.cancel();
+		assertEquals(0, endpoint.getOutstanding());
+		// the callback of the cancelled request doesn't finish the endpoint again
+		attempt.cancel();
+		attempt.finish(false);
+		assertEquals(0, endpoint.getOutstanding());
+		assertEquals(0, endpoint.getErrorCount());
+	}
+
+	@Test
+	public void testCancelAfterAnswered() {
+		Endpoint endpoint = new Endpoint("http://localhost/");
+		ApiRequest request = new ApiRequest("v1/version");
+		ApiRequest.Attempt attempt = request.start(endpoint);
+		request.sent(attempt, CompletableFuture.completedFuture(null));
+		attempt.finish(true);
+		request.cancel();
+		assertEquals(0, endpoint.getOutstanding());
+		assertEquals(1, endpoint.getRequestCount());
+	}
+}
@@ -4,12 +4,17 @@ import org.junit.Test;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class BCDiceClientTest {
@@ -74,4 +79,69 @@ public class BCDiceClientTest {
 		assertEquals(String.format("%s/", urlB), client.getDiceUrlList().get(client.getUrlCursor()));
 		assertEquals(2, client.getDiceUrlList().size());
 	}
+
+	@Test
+	public void testPrefilterBackoff() throws Exception {
+		AtomicInteger requests = new AtomicInteger(0);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			BCDiceClient client = new BCDiceClient("http://localhost:" + server.getAddress().getPort() + "/");
+			client.setRetryPolicy(new RetryPolicy(1, 0, 0, new RetryBudget(0, 0, System::currentTimeMillis)));
+			assertTrue(client.isDiceCommand("2d6", "general"));
+			long deadline = System.currentTimeMillis() + 5000;
+			while(requests.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(200);
+			int failed = requests.get();
+			assertTrue(failed > 0);
+			// the chat during the outage doesn't ask SystemInfo again
+			for(int i = 0; i < 10; i++) {
+				client.isDiceCommand("hello", "general");
+			}
+			Thread.sleep(200);
+			assertEquals(failed, requests.get());
+			assertFalse(client.getCommandPrefilter().isCompiled("DiceBot"));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testVersionCheck() throws Exception {
+		AtomicInteger versions = new AtomicInteger(0);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body;
+			if(exchange.getRequestURI().getPath().endsWith("/v1/version")) {
+				body = String.format("{\"api\":\"0.9.%d\",\"bcdice\":\"2.0.0\"}", versions.incrementAndGet()).getBytes("UTF-8");
+			} else {
+				body = "{\"ok\":false,\"reason\":\"unsupported game system\"}".getBytes("UTF-8");
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		try {
+			BCDiceClient client = new BCDiceClient("http://localhost:" + server.getAddress().getPort() + "/");
+			client.isDiceCommand("2d6", "general");
+			client.isDiceCommand("2d6", "general");
+			Thread.sleep(300);
+			assertEquals(1, versions.get());
+			// the version is asked again after the interval
+			client.setVersionCheckInterval(0);
+			client.isDiceCommand("2d6", "general");
+			Thread.sleep(300);
+			assertEquals(2, versions.get());
+		} finally {
+			server.stop(0);
+		}
+	}
 }
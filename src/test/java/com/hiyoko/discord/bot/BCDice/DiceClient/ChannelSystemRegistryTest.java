@@ -0,0 +1,74 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ChannelSystemRegistryTest {
+	@Test
+	public void testGetAndPut() {
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		registry.put("general", "DiceBot");
+		registry.put("437628913458561024", "SwordWorld2.5");
+		registry.put("007", "Cthulhu");
+		assertEquals("DiceBot", registry.get("general"));
+		assertEquals("SwordWorld2.5", registry.get("437628913458561024"));
+		assertEquals("SwordWorld2.5", registry.get(437628913458561024L));
+		assertEquals("Cthulhu", registry.get("007"));
+		assertNull(registry.get("7"));
+		assertNull(registry.get("99999999999999999999"));
+
+		registry.put("437628913458561024", "Cthulhu");
+		assertEquals("Cthulhu", registry.get("437628913458561024"));
+		assertEquals(3, registry.size());
+		assertEquals(2, registry.getSystems().size());
+	}
+
+	@Test
+	public void testSnapshot() {
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		Map<String, String> expected = new HashMap<String, String>();
+		for(long i = 1; i <= 10000; i++) {
+			String channel = Long.toString(400000000000000000L + i * 7919);
+			String system = "System" + (i % 37);
+			registry.put(channel, system);
+			expected.put(channel, system);
+		}
+		registry.put("general", "DiceBot");
+		expected.put("general", "DiceBot");
+
+		Map<String, String> snapshot = registry.snapshot();
+		assertEquals(expected, new HashMap<String, String>(snapshot));
+		assertEquals(10001, snapshot.size());
+		registry.put("1", "Later");
+		assertEquals(10001, snapshot.size());
+		assertEquals(39, registry.getSystems().size());
+	}
+
+	@Test
+	public void testConcurrentWrite() throws Exception {
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for(int t = 0; t < 4; t++) {
+			int thread = t;
+			executor.submit(() -> {
+				for(long i = 1; i <= 5000; i++) {
+					long channel = i * 4 + thread;
+					registry.put(channel, "System" + thread);
+					assertEquals("System" + thread, registry.get(channel));
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+		assertEquals(20000, registry.size());
+		assertEquals("System3", registry.get(19999L));
+	}
+}
@@ -0,0 +1,145 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChannelSystemStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRestore() throws Exception {
+		File dir = new File(folder.getRoot(), "store");
+		ChannelSystemStore store = new ChannelSystemStore(dir, 10000);
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		store.open(registry);
+		registry.put("437628913458561024", "SwordWorld2.5");
+		registry.put("437628913458561025", "Cthulhu");
+		registry.put("437628913458561024", "DoubleCross");
+		registry.put("general", "DiceBot");
+		store.close();
+		assertTrue(new File(dir, "journal.dat").length() > 0);
+
+		ChannelSystemRegistry restored = new ChannelSystemRegistry();
+		new ChannelSystemStore(dir, 10000).open(restored);
+		assertEquals("DoubleCross", restored.get("437628913458561024"));
+		assertEquals("Cthulhu", restored.get("437628913458561025"));
+		assertNull(restored.get("general"));
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		File dir = folder.getRoot();
+		ChannelSystemStore store = new ChannelSystemStore(dir, 1000);
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		store.open(registry);
+		for(long i = 1; i <= 100000; i++) {
+			registry.put(400000000000000000L + i, "System" + (i % 50));
+		}
+		store.close();
+		assertTrue(new File(dir, "snapshot.dat").exists());
+		assertTrue(new File(dir, "journal.dat").length() < 1000 * 30);
+
+		ChannelSystemRegistry restored = new ChannelSystemRegistry();
+		long started = System.currentTimeMillis();
+		new ChannelSystemStore(dir, 1000).open(restored);
+		assertTrue(System.currentTimeMillis() - started < 2000);
+		assertEquals(100000, restored.size());
+		assertEquals("System7", restored.get(400000000000000007L));
+		assertEquals("System0", restored.get(400000000000100000L));
+	}
+
+	@Test
+	public void testBrokenJournalTail() throws Exception {
+		File dir = folder.getRoot();
+		ChannelSystemStore store = new ChannelSystemStore(dir, 10000);
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		store.open(registry);
+		registry.put(437628913458561024L, "SwordWorld2.5");
+		store.close();
+		try(FileOutputStream out = new FileOutputStream(new File(dir, "journal.dat"), true)) {
+			out.write(new byte[]{1, 2, 3});
+		}
+
+		ChannelSystemRegistry restored = new ChannelSystemRegistry();
+		new ChannelSystemStore(dir, 10000).open(restored);
+		assertEquals("SwordWorld2.5", restored.get(437628913458561024L));
+		assertEquals(1, restored.size());
+	}
+
+	@Test
+	public void testAppendAfterTornRecord() throws Exception {
+		File dir = folder.getRoot();
+		ChannelSystemStore store = new ChannelSystemStore(dir, 10000);
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		store.open(registry);
+		registry.put(437628913458561024L, "SwordWorld2.5");
+		registry.put(437628913458561025L, "Cthulhu");
+		store.close();
+		File journal = new File(dir, "journal.dat");
+		// the process was killed while writing the second record
+		try(RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+			raf.setLength(journal.length() - 3);
+		}
+
+		ChannelSystemRegistry reopened = new ChannelSystemRegistry();
+		ChannelSystemStore second = new ChannelSystemStore(dir, 10000);
+		second.open(reopened);
+		assertEquals(1, reopened.size());
+		reopened.put(437628913458561026L, "DoubleCross");
+		reopened.put(437628913458561024L, "Emoklore");
+		second.close();
+
+		ChannelSystemRegistry restored = new ChannelSystemRegistry();
+		new ChannelSystemStore(dir, 10000).open(restored);
+		assertEquals("Emoklore", restored.get(437628913458561024L));
+		assertEquals("DoubleCross", restored.get(437628913458561026L));
+		assertNull(restored.get(437628913458561025L));
+		assertEquals(2, restored.size());
+	}
+
+	@Test
+	public void testStoppedBeforeJournalEmptied() throws Exception {
+		File dir = folder.getRoot();
+		ChannelSystemStore store = new ChannelSystemStore(dir, 10000);
+		ChannelSystemRegistry registry = new ChannelSystemRegistry();
+		store.open(registry);
+		registry.put(437628913458561024L, "SwordWorld2.5");
+		store.close();
+		File journal = new File(dir, "journal.dat");
+		File oldJournal = new File(dir, "journal.old");
+		Files.copy(journal.toPath(), oldJournal.toPath());
+
+		ChannelSystemRegistry reopened = new ChannelSystemRegistry();
+		ChannelSystemStore second = new ChannelSystemStore(dir, 1);
+		second.open(reopened);
+		reopened.put(437628913458561024L, "Cthulhu");
+		second.close();
+		assertTrue(new File(dir, "snapshot.dat").exists());
+		// the process was stopped after the snapshot was moved and before the journal was emptied
+		Files.move(oldJournal.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		ChannelSystemRegistry restored = new ChannelSystemRegistry();
+		ChannelSystemStore third = new ChannelSystemStore(dir, 10000);
+		third.open(restored);
+		assertEquals("Cthulhu", restored.get(437628913458561024L));
+		restored.put(437628913458561025L, "DoubleCross");
+		third.close();
+
+		ChannelSystemRegistry last = new ChannelSystemRegistry();
+		new ChannelSystemStore(dir, 10000).open(last);
+		assertEquals("Cthulhu", last.get(437628913458561024L));
+		assertEquals("DoubleCross", last.get(437628913458561025L));
+	}
+}
@@ -0,0 +1,60 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+	private AtomicLong now;
+	private CircuitBreaker breaker;
+
+	@Before
+	public void setUp() {
+		now = new AtomicLong(0);
+		breaker = new CircuitBreaker("test", 3, 1000, now::get);
+	}
+
+	@Test
+	public void testOpenAfterThreshold() {
+		breaker.onFailure();
+		breaker.onFailure();
+		assertTrue(breaker.isAvailable());
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertTrue(breaker.isAvailable());
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.isAvailable());
+	}
+
+	@Test
+	public void testHalfOpenProbe() {
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		now.set(999);
+		assertFalse(breaker.tryStartProbe());
+		now.set(1000);
+		assertTrue(breaker.tryStartProbe());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// Only one probe at once
+		assertFalse(breaker.tryStartProbe());
+		assertFalse(breaker.isAvailable());
+
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		now.set(1999);
+		assertFalse(breaker.tryStartProbe());
+		now.set(2000);
+		assertTrue(breaker.tryStartProbe());
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.isAvailable());
+	}
+}
@@ -0,0 +1,56 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+
+public class CommandPrefilterTest {
+	@Test
+	public void testCommonCommands() {
+		CommandPrefilter filter = new CommandPrefilter();
+		assertTrue(filter.mayBeCommand("hello", "DiceBot"));
+		filter.compile("DiceBot", new SystemInfo("DiceBot", "DiceBot", Collections.<String>emptyList(), ""));
+		assertTrue(filter.isCompiled("DiceBot"));
+		assertFalse(filter.mayBeCommand("hello", "DiceBot"));
+		assertFalse(filter.mayBeCommand("lol", "DiceBot"));
+		assertFalse(filter.mayBeCommand("http://example.com", "DiceBot"));
+		assertTrue(filter.mayBeCommand("2d6", "DiceBot"));
+		assertTrue(filter.mayBeCommand("S2D6>=8", "DiceBot"));
+		assertTrue(filter.mayBeCommand("d66", "DiceBot"));
+		assertTrue(filter.mayBeCommand("choice[a,b]", "DiceBot"));
+		assertTrue(filter.mayBeCommand("x3 2d6", "DiceBot"));
+		assertTrue(filter.mayBeCommand("C(1+2)", "DiceBot"));
+	}
+
+	@Test
+	public void testSystemPrefixs() {
+		CommandPrefilter filter = new CommandPrefilter();
+		filter.compile("SwordWorld2.5", new SystemInfo("ソードワールド2.5", "SwordWorld2.5", Arrays.asList("K\\d+.*", "Gr(\\d+)?", "FT"), ""));
+		assertTrue(filter.mayBeCommand("K20+5", "SwordWorld2.5"));
+		assertTrue(filter.mayBeCommand("k20", "SwordWorld2.5"));
+		assertTrue(filter.mayBeCommand("SFT", "SwordWorld2.5"));
+		assertTrue(filter.mayBeCommand("2d6", "SwordWorld2.5"));
+		assertFalse(filter.mayBeCommand("hello", "SwordWorld2.5"));
+		assertTrue(filter.mayBeCommand("hello", "Cthulhu"));
+
+		// the first character is checked before the pattern
+		assertTrue(filter.mayBeCommand("  Gr3", 2, 5, "SwordWorld2.5"));
+		assertFalse(filter.mayBeCommand("  Gr3", 0, 5, "SwordWorld2.5"));
+		assertFalse(filter.mayBeCommand("おはよう", "SwordWorld2.5"));
+		assertFalse(filter.mayBeCommand("2d6", 3, 3, "SwordWorld2.5"));
+		filter.compile("Japanese", new SystemInfo("Japanese", "Japanese", Arrays.asList("ランダム表"), ""));
+		assertTrue(filter.mayBeCommand("ランダム表", "Japanese"));
+		assertFalse(filter.mayBeCommand("hello", "Japanese"));
+
+		filter.compile("Broken", new SystemInfo("Broken", "Broken", Arrays.asList("(unclosed"), ""));
+		assertTrue(filter.mayBeCommand("hello", "Broken"));
+		filter.clear();
+		assertTrue(filter.mayBeCommand("hello", "SwordWorld2.5"));
+	}
+}
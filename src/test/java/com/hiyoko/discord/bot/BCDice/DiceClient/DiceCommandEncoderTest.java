@@ -0,0 +1,68 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.URLEncoder;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DiceCommandEncoderTest {
+	private static final String[] GOLDEN = {
+			"", "2d6", "1D100", "S2d6", "2d6 >= 8", "2d6>=8", "2d6 > = 8", "2d6 >> 8", "2d6 > > 8", "1d100 <= 50 命中",
+			"1d100　<=　50", "2d6\t>=\t8", "2d6 = = 7", "k20+5 ダメージ", "choice[a,b,c]", "choice[ご飯, パン]",
+			"x3 2d6", "%20", "%2520", "% 2d6", "%%20", "~", "%7E", "2d6 ~ 3", "a+b*c/d", "C(1+2)", "(1+2)D6",
+			"😀 2d6", "\uD83D", "\uDE00x", "\uD83D😀", " ", "  2d6  ", "<", " = ", "éß", "#$&?/:;,@"
+	};
+
+	private static String legacyCommand(String rawCommand) throws Exception {
+		String command = rawCommand;
+		for(String replaceTarget: new String[]{"<", ">", "="}) {
+			command = command.replaceAll("[\\s　]*[" + replaceTarget + "]+[\\s　]*", replaceTarget);
+		}
+		command = URLEncoder.encode(command.replaceAll(" ", "%20"), "UTF-8");
+		return command.replaceAll("%2520", "%20").replaceAll("%7E", "~");
+	}
+
+	private static String legacySystem(String system) throws Exception {
+		return URLEncoder.encode(system, "UTF-8").replaceAll("%2520", "%20");
+	}
+
+	@Test
+	public void testGolden() throws Exception {
+		for(String command : GOLDEN) {
+			assertEquals(command, legacyCommand(command), DiceCommandEncoder.encodeCommand(command));
+			assertEquals(command, legacySystem(command), DiceCommandEncoder.encodeSystem(command));
+		}
+		assertEquals("2d6%3E%3D8", DiceCommandEncoder.encodeCommand("2d6 >= 8"));
+		assertEquals("Sword%20World+2.5", DiceCommandEncoder.encodeSystem("Sword%20World 2.5"));
+	}
+
+	@Test
+	public void testRandom() throws Exception {
+		char[] alphabet = " 　\t\n<>=%20~dD6+-[],.*_あ😀\uD83D".toCharArray();
+		Random random = new Random(94);
+		for(int i = 0; i < 20000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for(int j = 0; j < length; j++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String command = sb.toString();
+			assertEquals(command, legacyCommand(command), DiceCommandEncoder.encodeCommand(command));
+			assertEquals(command, legacySystem(command), DiceCommandEncoder.encodeSystem(command));
+		}
+	}
+
+	@Test
+	public void testCache() {
+		DiceCommandEncoder encoder = new DiceCommandEncoder(2);
+		String first = encoder.normalize("2d6 >= 8");
+		assertEquals("2d6%3E%3D8", first);
+		assertSame(first, encoder.normalize("2d6 >= 8"));
+		encoder.normalize("1d100");
+		encoder.normalize("1d20");
+		assertEquals(first, encoder.normalize("2d6 >= 8"));
+	}
+}
@@ -0,0 +1,82 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndpointSelectorTest {
+	private Endpoint primary;
+	private Endpoint secondary;
+	private List<Endpoint> endpoints;
+
+	@Before
+	public void setUp() {
+		primary = new Endpoint("http://primary/");
+		secondary = new Endpoint("http://secondary/");
+		endpoints = new ArrayList<Endpoint>();
+		endpoints.add(primary);
+		endpoints.add(secondary);
+	}
+
+	@Test
+	public void testPrimary() {
+		EndpointSelector selector = EndpointSelectorFactory.getEndpointSelector("primary");
+		assertTrue(selector instanceof PrimaryEndpointSelector);
+		assertSame(primary, selector.select(endpoints, 0, null));
+		assertSame(secondary, selector.select(endpoints, 0, primary));
+		assertSame(secondary, selector.select(endpoints, 1, null));
+	}
+
+	@Test
+	public void testDefault() {
+		assertEquals("least-outstanding", EndpointSelectorFactory.getDefaultName(true));
+		assertEquals("primary", EndpointSelectorFactory.getDefaultName(false));
+		assertTrue(EndpointSelectorFactory.getEndpointSelector(EndpointSelectorFactory.getDefaultName(true)) instanceof LeastOutstandingEndpointSelector);
+	}
+
+	@Test
+	public void testRoundRobin() {
+		EndpointSelector selector = EndpointSelectorFactory.getEndpointSelector("round-robin");
+		assertSame(primary, selector.select(endpoints, 0, null));
+		assertSame(secondary, selector.select(endpoints, 0, null));
+		assertSame(primary, selector.select(endpoints, 0, null));
+		assertSame(primary, selector.select(endpoints, 0, secondary));
+	}
+
+	@Test
+	public void testLeastOutstanding() {
+		EndpointSelector selector = EndpointSelectorFactory.getEndpointSelector("least-outstanding");
+		primary.start();
+		assertSame(secondary, selector.select(endpoints, 0, null));
+		secondary.start();
+		secondary.start();
+		assertSame(primary, selector.select(endpoints, 0, null));
+		assertSame(secondary, selector.select(endpoints, 0, primary));
+	}
+
+	@Test
+	public void testEwma() {
+		EndpointSelector selector = EndpointSelectorFactory.getEndpointSelector("ewma");
+		primary.finish(primary.start() - 10000000L, true);
+		// Not measured server is tried first
+		assertSame(secondary, selector.select(endpoints, 0, null));
+		secondary.finish(secondary.start() - 500000000L, true);
+		assertSame(primary, selector.select(endpoints, 0, null));
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		primary.finish(primary.start(), false);
+		assertTrue(primary.getEwmaErrorRate() > 0.5);
+		assertSame(secondary, selector.select(endpoints, 0, null));
+	}
+}
@@ -0,0 +1,100 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+import com.sun.net.httpserver.HttpServer;
+
+public class HedgePolicyTest {
+	@Test
+	public void testDelay() {
+		HedgePolicy fixed = new HedgePolicy(true, 300, 0.95, 1000, 10);
+		assertEquals(300, fixed.getDelayMillis());
+
+		HedgePolicy observed = new HedgePolicy(true, -1, 0.95, 1000, 10);
+		assertEquals(1000, observed.getDelayMillis());
+		for(int i = 1; i <= 100; i++) {
+			observed.recordLatency(i * 10);
+		}
+		assertEquals(950, observed.getDelayMillis());
+	}
+
+	@Test
+	public void testPercentile() {
+		LatencyTracker tracker = new LatencyTracker(4);
+		assertEquals(-1, tracker.getPercentile(0.5));
+		for(long latency : new long[]{1000, 1000, 10, 20, 30, 40}) {
+			tracker.record(latency);
+		}
+		assertEquals(4, tracker.getCount());
+		assertEquals(40, tracker.getPercentile(0.95));
+	}
+
+	@Test
+	public void testBudget() {
+		HedgePolicy policy = new HedgePolicy(true, 100, 0.95, 1000, 10);
+		int hedged = 0;
+		for(int i = 0; i < 1000; i++) {
+			policy.onRequest();
+			if(policy.tryHedge()) {
+				hedged++;
+			}
+		}
+		// 10% of the rolls and the initial balance
+		assertTrue(hedged <= 110);
+		assertTrue(hedged >= 100);
+	}
+
+	@Test
+	public void testHedgedRoll() throws Exception {
+		String json = "{\"ok\":true,\"result\":\": (2D6) ＞ 7\",\"secret\":false,\"dices\":[]}";
+		HttpServer slow = startServer(json, 3000);
+		HttpServer fast = startServer(json, 0);
+		try {
+			BCDiceClient client = new BCDiceClient(Arrays.asList(
+					"http://localhost:" + slow.getAddress().getPort() + "/",
+					"http://localhost:" + fast.getAddress().getPort() + "/"), true);
+			client.setHedgePolicy(new HedgePolicy(true, 100, 0.95, 1000, 10));
+			long started = System.currentTimeMillis();
+			DicerollResult result = client.rollDice("2d6");
+			assertEquals(": (2D6) ＞ 7", result.getText());
+			assertTrue(System.currentTimeMillis() - started < 2000);
+
+			client.setHedgePolicy(new HedgePolicy(false, 100, 0.95, 1000, 10));
+			started = System.currentTimeMillis();
+			client.rollDice("2d6");
+			assertFalse(System.currentTimeMillis() - started < 2000);
+		} finally {
+			slow.stop(0);
+			fast.stop(0);
+		}
+	}
+
+	private HttpServer startServer(String body, long delayMillis) throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try(OutputStream os = exchange.getResponseBody()) {
+				os.write(bytes);
+			}
+		});
+		server.start();
+		return server;
+	}
+}
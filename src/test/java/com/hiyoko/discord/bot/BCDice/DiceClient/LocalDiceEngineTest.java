@@ -0,0 +1,83 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+
+public class LocalDiceEngineTest {
+	/**
+	 * Returns the given dice in order
+	 */
+	private static class FixedRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		private final int[] dice;
+		private int index = 0;
+
+		private FixedRandom(int... dice) {
+			this.dice = dice;
+		}
+
+		@Override
+		public int nextInt(int bound) {
+			return (dice[index++ % dice.length] - 1) % bound;
+		}
+	}
+
+	@Test
+	public void testRoll() {
+		assertEquals(": (2D6) ＞ 7[3,4] ＞ 7", new LocalDiceEngine(new FixedRandom(3, 4)).roll("2d6", "DiceBot").getText());
+		assertEquals(": (1D100) ＞ 42", new LocalDiceEngine(new FixedRandom(42)).roll("1D100 命中", "DiceBot").getText());
+		assertEquals(": (1D6+3) ＞ 5[5]+3 ＞ 8", new LocalDiceEngine(new FixedRandom(5)).roll("1d6+3", "DiceBot").getText());
+		assertEquals(": (2D6+1D4-2) ＞ 3[1,2]+4[4]-2 ＞ 5",
+				new LocalDiceEngine(new FixedRandom(1, 2, 4)).roll("2D6+1D4-2", "DiceBot").getText());
+	}
+
+	@Test
+	public void testComparison() {
+		DicerollResult success = new LocalDiceEngine(new FixedRandom(4, 5)).roll("2D6>=8", "DiceBot");
+		assertEquals(": (2D6>=8) ＞ 9[4,5] ＞ 9 ＞ 成功", success.getText());
+		assertTrue(success.isRolled());
+		assertFalse(success.isSecret());
+		assertEquals(": (2D6<7) ＞ 9[4,5] ＞ 9 ＞ 失敗", new LocalDiceEngine(new FixedRandom(4, 5)).roll("2d6<7", "DiceBot").getText());
+		assertEquals(": (1D6<>3) ＞ 3 ＞ 失敗", new LocalDiceEngine(new FixedRandom(3)).roll("1D6<>3", "DiceBot").getText());
+	}
+
+	@Test
+	public void testChoiceAndSecret() {
+		assertEquals(": (choice[a,b,c]) ＞ b", new LocalDiceEngine(new FixedRandom(2)).roll("choice[a,b,c]", "DiceBot").getText());
+		DicerollResult secret = new LocalDiceEngine(new FixedRandom(6)).roll("S1D6", "DiceBot");
+		assertTrue(secret.isSecret());
+		assertEquals(": (1D6) ＞ 6", secret.getText());
+		assertTrue(new LocalDiceEngine(new FixedRandom(1)).roll("Schoice[a,b]", "DiceBot").isSecret());
+	}
+
+	@Test
+	public void testUnsupported() {
+		LocalDiceEngine engine = new LocalDiceEngine(new FixedRandom(1));
+		assertNull(engine.roll("2B6>=4", "DiceBot"));
+		assertNull(engine.roll("1D6=>3", "DiceBot"));
+		assertNull(engine.roll("-1D6", "DiceBot"));
+		assertNull(engine.roll("1D6+", "DiceBot"));
+		assertNull(engine.roll("3+4", "DiceBot"));
+		assertNull(engine.roll("1000D6", "DiceBot"));
+		assertNull(engine.roll("SWORD", "DiceBot"));
+		assertNull(engine.roll("choice[a]", "DiceBot"));
+	}
+
+	@Test
+	public void testClientFallsBackToRemote() throws Exception {
+		DiceClient remote = new DiceClientMock();
+		LocalDiceClient client = new LocalDiceClient(remote, new LocalDiceEngine(new FixedRandom(3, 4)), Collections.singleton("DiceBot"));
+		assertEquals(": (2D6) ＞ 7[3,4] ＞ 7", client.rollDice("2D6", "DiceBot").getText());
+		assertEquals(remote.rollDice("2D6", "SwordWorld").getText(), client.rollDice("2D6", "SwordWorld").getText());
+		assertEquals(remote.rollDice("2B6", "DiceBot").getText(), client.rollDice("2B6", "DiceBot").getText());
+	}
+}
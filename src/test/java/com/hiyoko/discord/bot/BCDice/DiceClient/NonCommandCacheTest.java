@@ -0,0 +1,64 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+import com.sun.net.httpserver.HttpServer;
+
+public class NonCommandCacheTest {
+	@Test
+	public void testTtlAndLru() {
+		AtomicLong now = new AtomicLong(0);
+		NonCommandCache cache = new NonCommandCache(2, 1000, now::get);
+		cache.put("DiceBot", "lol");
+		cache.put("DiceBot", "ok");
+		assertTrue(cache.isNonCommand("DiceBot", "lol"));
+		assertFalse(cache.isNonCommand("SwordWorld", "lol"));
+		cache.put("DiceBot", "gg");
+		assertFalse(cache.isNonCommand("DiceBot", "ok"));
+		assertTrue(cache.isNonCommand("DiceBot", "gg"));
+		now.set(1000);
+		assertFalse(cache.isNonCommand("DiceBot", "lol"));
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void testSkipRequest() throws Exception {
+		AtomicInteger requests = new AtomicInteger(0);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			byte[] body = "{\"ok\":false,\"reason\":\"unsupported command\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(400, body.length);
+			try(OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		try {
+			BCDiceClient client = new BCDiceClient("http://localhost:" + server.getAddress().getPort() + "/");
+			DicerollResult first = client.rollDice("lol");
+			assertFalse(first.isRolled());
+			assertFalse(client.rollDice("lol").isRolled());
+			assertEquals(1, requests.get());
+			client.rollDice("gg");
+			assertEquals(2, requests.get());
+			client.invalidateCache();
+			client.rollDice("lol");
+			assertEquals(3, requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
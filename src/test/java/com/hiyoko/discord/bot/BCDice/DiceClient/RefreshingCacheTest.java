@@ -0,0 +1,61 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RefreshingCacheTest {
+	@Test
+	public void testTtlAndBackgroundRefresh() throws Exception {
+		AtomicLong now = new AtomicLong(0);
+		AtomicInteger loads = new AtomicInteger(0);
+		RefreshingCache<String> cache = new RefreshingCache<String>("test", 1000, now::get);
+
+		assertEquals("v1", cache.get(() -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).get());
+		now.set(999);
+		assertEquals("v1", cache.get(() -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).get());
+		assertEquals(1, loads.get());
+
+		// stale value is returned while the new value is loaded
+		now.set(1000);
+		CompletableFuture<String> refresh = new CompletableFuture<String>();
+		assertEquals("v1", cache.get(() -> refresh).get());
+		assertEquals("v1", cache.get(() -> CompletableFuture.completedFuture("never")).get());
+		refresh.complete("v2");
+		assertEquals("v2", cache.get(() -> CompletableFuture.completedFuture("never")).get());
+	}
+
+	@Test
+	public void testFailedRefreshKeepsStaleValue() throws Exception {
+		AtomicLong now = new AtomicLong(0);
+		RefreshingCache<String> cache = new RefreshingCache<String>("test", 1000, now::get);
+		assertEquals("v1", cache.get(() -> CompletableFuture.completedFuture("v1")).get());
+		now.set(5000);
+		assertEquals("v1", cache.get(() -> AsyncUtil.failed(new IOException("down"))).get());
+		assertEquals("v1", cache.peek());
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		AtomicLong now = new AtomicLong(0);
+		RefreshingCache<String> cache = new RefreshingCache<String>("test", 1000, now::get);
+		CompletableFuture<String> oldServer = new CompletableFuture<String>();
+		CompletableFuture<String> first = cache.get(() -> oldServer);
+		cache.invalidate();
+		oldServer.complete("old");
+		assertEquals("old", first.get());
+		assertNull(cache.peek());
+
+		CompletableFuture<String> failed = cache.get(() -> AsyncUtil.failed(new IOException("down")));
+		assertTrue(failed.isCompletedExceptionally());
+		assertNull(cache.peek());
+		assertEquals("new", cache.get(() -> CompletableFuture.completedFuture("new")).get());
+	}
+}
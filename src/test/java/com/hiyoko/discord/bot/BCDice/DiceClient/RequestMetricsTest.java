@@ -0,0 +1,26 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.Metrics.MetricsRegistry;
+
+public class RequestMetricsTest {
+	@Test
+	public void testRecord() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Endpoint endpoint = new Endpoint("http://localhost/");
+		RequestMetrics metrics = endpoint.getRequestMetrics(new ApiRequest("v1/diceroll?system=DiceBot&command=1d6").getApi(), registry);
+		assertSame(metrics, endpoint.getRequestMetrics("v1/diceroll", registry));
+		metrics.record(200, System.nanoTime());
+		metrics.record(200, System.nanoTime());
+		metrics.record(RequestMetrics.ERROR, System.nanoTime());
+
+		String text = registry.scrape();
+		assertTrue(text, text.contains("bcdice_api_requests_total{server=\"http://localhost/\",api=\"v1/diceroll\",status=\"200\"} 2\n"));
+		assertTrue(text, text.contains("bcdice_api_requests_total{server=\"http://localhost/\",api=\"v1/diceroll\",status=\"error\"} 1\n"));
+		assertTrue(text, text.contains("bcdice_api_request_seconds_count{server=\"http://localhost/\",api=\"v1/diceroll\"} 3\n"));
+	}
+}
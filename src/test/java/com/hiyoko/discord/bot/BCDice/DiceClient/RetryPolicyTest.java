@@ -0,0 +1,64 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.ProcessingException;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+	@Test
+	public void testDelay() {
+		RetryPolicy policy = new RetryPolicy(6, 100, 1000, new RetryBudget(1, 100, System::currentTimeMillis));
+		for(int i = 0; i < 100; i++) {
+			long first = policy.getDelayMillis(1);
+			assertTrue(first >= 50 && first <= 100);
+			long third = policy.getDelayMillis(3);
+			assertTrue(third >= 200 && third <= 400);
+			long capped = policy.getDelayMillis(10);
+			assertTrue(capped >= 500 && capped <= 1000);
+		}
+	}
+
+	@Test
+	public void testRetryable() {
+		RetryPolicy policy = new RetryPolicy(6, 100, 1000, new RetryBudget(1, 100, System::currentTimeMillis));
+		assertTrue(policy.isRetryableStatus(503, false));
+		assertFalse(policy.isRetryableStatus(500, false));
+		assertTrue(policy.isRetryableStatus(500, true));
+		assertFalse(policy.isRetryableStatus(404, true));
+		assertTrue(policy.isRetryableException(new ProcessingException("connection refused")));
+		assertTrue(policy.isRetryableException(new IOException("timeout")));
+		assertFalse(policy.isRetryableException(new IllegalArgumentException("bad url")));
+	}
+
+	@Test
+	public void testMaxAttempts() {
+		RetryPolicy policy = new RetryPolicy(3, 100, 1000, new RetryBudget(1, 100, System::currentTimeMillis));
+		assertTrue(policy.tryRetry(1));
+		assertTrue(policy.tryRetry(2));
+		assertFalse(policy.tryRetry(3));
+	}
+
+	@Test
+	public void testBudget() {
+		AtomicLong now = new AtomicLong(0);
+		RetryBudget budget = new RetryBudget(0.5, 1, now::get);
+		// Initial balance is 10
+		for(int i = 0; i < 10; i++) {
+			assertTrue(budget.tryWithdraw());
+		}
+		assertFalse(budget.tryWithdraw());
+		budget.onRequest();
+		assertFalse(budget.tryWithdraw());
+		budget.onRequest();
+		assertTrue(budget.tryWithdraw());
+		now.set(1000);
+		assertTrue(budget.tryWithdraw());
+		assertFalse(budget.tryWithdraw());
+	}
+}
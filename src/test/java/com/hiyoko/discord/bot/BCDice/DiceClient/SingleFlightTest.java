@@ -0,0 +1,101 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.VersionInfo;
+import com.sun.net.httpserver.HttpServer;
+
+public class SingleFlightTest {
+	@Test
+	public void testShareResultAndError() throws Exception {
+		SingleFlight flight = new SingleFlight();
+		AtomicInteger calls = new AtomicInteger(0);
+		CompletableFuture<String> request = new CompletableFuture<String>();
+		CompletableFuture<String> first = flight.execute("version", () -> { calls.incrementAndGet(); return request; });
+		CompletableFuture<String> second = flight.execute("version", () -> { calls.incrementAndGet(); return request; });
+		CompletableFuture<String> other = flight.execute("systems", () -> CompletableFuture.completedFuture("other"));
+		assertEquals("other", other.get());
+		assertNotSame(first, second);
+		second.cancel(true);
+		request.complete("1.0");
+		assertEquals("1.0", first.get());
+		assertEquals(1, calls.get());
+		assertEquals(1, flight.getSharedCount());
+		assertEquals(0, flight.size());
+
+		CompletableFuture<String> failing = new CompletableFuture<String>();
+		CompletableFuture<String> error1 = flight.execute("version", () -> failing);
+		CompletableFuture<String> error2 = flight.execute("version", () -> failing);
+		failing.completeExceptionally(new IOException("down"));
+		for(CompletableFuture<String> error : Arrays.asList(error1, error2)) {
+			try {
+				error.get();
+				fail("The error must be shared");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		}
+		// nothing is cached
+		assertEquals("2.0", flight.execute("version", () -> CompletableFuture.completedFuture("2.0")).get());
+		assertEquals(4, flight.getStartedCount());
+	}
+
+	@Test
+	public void testCoalesceVersionRequests() throws Exception {
+		AtomicInteger requests = new AtomicInteger(0);
+		CountDownLatch release = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"api\":\"0.9.0\",\"bcdice\":\"2.0.0\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		try {
+			BCDiceClient client = new BCDiceClient("http://localhost:" + server.getAddress().getPort() + "/");
+			List<CompletableFuture<VersionInfo>> versions = new ArrayList<CompletableFuture<VersionInfo>>();
+			for(int i = 0; i < 10; i++) {
+				versions.add(client.getVersionAsync());
+			}
+			release.countDown();
+			VersionInfo first = versions.get(0).get(5, TimeUnit.SECONDS);
+			for(CompletableFuture<VersionInfo> version : versions) {
+				assertSame(first, version.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, requests.get());
+			client.getVersion();
+			assertEquals(2, requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.hiyoko.discord.bot.BCDice.DiceClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+
+public class SystemInfoCacheTest {
+	private SystemInfo info(String gameType) {
+		return new SystemInfo(gameType, gameType, new ArrayList<String>(), gameType + " info");
+	}
+
+	@Test
+	public void testLru() {
+		SystemInfoCache cache = new SystemInfoCache(2, 1000, System::currentTimeMillis);
+		cache.put("http://a/", "SwordWorld", info("SwordWorld"));
+		cache.put("http://a/", "Cthulhu", info("Cthulhu"));
+		assertEquals("SwordWorld", cache.get("http://a/", "SwordWorld").getInfo().getGameType());
+		cache.put("http://a/", "DoubleCross", info("DoubleCross"));
+		assertNull(cache.get("http://a/", "Cthulhu"));
+		assertEquals("DoubleCross", cache.get("http://a/", "DoubleCross").getInfo().getGameType());
+		// same system on another server is another entry
+		assertNull(cache.get("http://b/", "DoubleCross"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testNotFound() {
+		AtomicLong now = new AtomicLong(0);
+		SystemInfoCache cache = new SystemInfoCache(10, 1000, now::get);
+		cache.putNotFound("http://a/", "Typo");
+		assertTrue(cache.get("http://a/", "Typo").isNotFound());
+		assertEquals(1, cache.getNotFoundHitCount());
+		now.set(1000);
+		assertNull(cache.get("http://a/", "Typo"));
+		assertEquals(0, cache.size());
+		assertTrue(cache.getStatsText().contains("not found hit: 1"));
+	}
+}
@@ -0,0 +1,86 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients.DiceBotNameTrie;
+
+/**
+ * Compare MessageClassifier with the old chain of isRoll, rolls, isOriginalDicebot and isShouldRoll.
+ * It's not run by mvn test. Run it after mvn test-compile:
+ * java -cp target/classes:target/test-classes com.hiyoko.discord.bot.BCDice.MessageClassifierBenchmark
+ * @author Shunshun94
+ *
+ */
+public class MessageClassifierBenchmark {
+	private static final Pattern DICE_COMMAND_PATTERN = Pattern.compile("^[\\w\\+\\-#\\$@<>=\\.\\[\\]\\(\\)]+");
+	private static final Pattern MULTIROLL_NUM_PREFIX = Pattern.compile("^(\\d+) ");
+	private static final Pattern MULTIROLL_TEXT_PREFIX = Pattern.compile("^\\[(.+)\\] ");
+	private static final String[] MESSAGES = {
+			"おはようございます", "それな", "lol", "今日のセッションは21時からです", "http://example.com/",
+			"ok", "gg", "了解です！", "2d6", "1d100<=50 目星", "3 2d6", "[パンダ,うさぎ] 1d6", "夜食表"
+	};
+	private static final DiceBotNameTrie NAMES = new DiceBotNameTrie(Arrays.asList("夜食表", "ラーメン表"));
+	private static int sink = 0;
+
+	private static boolean isDiceCommand(String command, String channel) {
+		if(command.startsWith("choice[")) {return true;}
+		if(command.startsWith("http")) {return false;}
+		return DICE_COMMAND_PATTERN.matcher(command).find();
+	}
+
+	/**
+	 * The old chain with the empty roll command and the suppressed mode
+	 */
+	private static int legacy(String rawInput, String rollCommand) {
+		if(rawInput.toLowerCase().startsWith("bcdice ") || rawInput.toLowerCase().equals("bcdice")) {
+			return 0;
+		}
+		if(! (rollCommand.isEmpty() || rawInput.trim().startsWith(rollCommand))) {
+			return 1;
+		}
+		String input = rawInput.replaceFirst(rollCommand, "").trim();
+		Matcher isNumMatcher = MULTIROLL_NUM_PREFIX.matcher(input);
+		if(isNumMatcher.find()) {
+			return 2;
+		}
+		Matcher isTextMatcher = MULTIROLL_TEXT_PREFIX.matcher(input);
+		if(isTextMatcher.find()) {
+			return 3;
+		}
+		if(! NAMES.findLongestPrefix(rawInput.replaceFirst(rollCommand, "").trim()).isEmpty()) {
+			return 4;
+		}
+		return isDiceCommand(rawInput, "channel") ? 5 : 1;
+	}
+
+	private static long run(boolean useClassifier, MessageClassifier classifier, int rounds) {
+		long started = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			for(String message : MESSAGES) {
+				if(useClassifier) {
+					sink += classifier.classify(message, "channel", "", true).getKind().ordinal();
+				} else {
+					sink += legacy(message, "");
+				}
+			}
+		}
+		return System.nanoTime() - started;
+	}
+
+	public static void main(String[] args) {
+		MessageClassifier classifier = new MessageClassifier(
+				(message, start, end, channel) -> isDiceCommand(message.substring(start, end), channel), NAMES::findLongestPrefix);
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		// warm up
+		run(false, classifier, rounds / 10);
+		run(true, classifier, rounds / 10);
+		long legacy = run(false, classifier, rounds);
+		long classified = run(true, classifier, rounds);
+		int count = rounds * MESSAGES.length;
+		System.out.println(String.format("legacy chain: %.1f ns/message", (double) legacy / count));
+		System.out.println(String.format("classifier  : %.1f ns/message", (double) classified / count));
+		System.out.println(sink == 0 ? "" : "done");
+	}
+}
@@ -0,0 +1,110 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.DiceClient.CommandPrefilter;
+import com.hiyoko.discord.bot.BCDice.MessageClassifier.Classification;
+import com.hiyoko.discord.bot.BCDice.MessageClassifier.Kind;
+import com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients.DiceBotNameTrie;
+import com.hiyoko.discord.bot.BCDice.dto.SystemInfo;
+
+public class MessageClassifierTest {
+	private static final Pattern DICE_COMMAND = Pattern.compile("^S?\\d+d\\d+");
+	private final DiceBotNameTrie names = new DiceBotNameTrie(Arrays.asList("夜食表", "ラーメン表"));
+	private final MessageClassifier classifier = new MessageClassifier(
+			(message, start, end, channel) -> DICE_COMMAND.matcher(message).region(start, end).find(), names::findLongestPrefix);
+
+	@Test
+	public void testSingleCommand() {
+		assertEquals(Kind.ADMIN, classifier.classify("bcdice help", "ch", "", true).getKind());
+		assertEquals(Kind.ADMIN, classifier.classify("BCDice", "ch", "", true).getKind());
+		assertFalse(MessageClassifier.isAdminCommand("bcdiceだよ"));
+
+		Classification dice = classifier.classify("  2d6 命中  ", "ch", "", true);
+		assertEquals(Kind.DICE_COMMAND, dice.getKind());
+		assertEquals("2d6 命中", dice.getCommand());
+
+		Classification diceBot = classifier.classify("夜食表 今夜は", "ch", "", true);
+		assertEquals(Kind.ORIGINAL_DICEBOT, diceBot.getKind());
+		assertEquals("夜食表", diceBot.getCommand());
+
+		assertSame(Kind.IGNORE, classifier.classify("hello", "ch", "", true).getKind());
+		assertEquals(Kind.DICE_COMMAND, classifier.classify("hello", "ch", "", false).getKind());
+	}
+
+	@Test
+	public void testRollCommand() {
+		assertEquals(Kind.IGNORE, classifier.classify("2d6", "ch", "/roll", true).getKind());
+		Classification prefixed = classifier.classify("/roll hello", "ch", "/roll", true);
+		assertEquals(Kind.DICE_COMMAND, prefixed.getKind());
+		assertEquals("hello", prefixed.getCommand());
+		assertEquals("夜食表", classifier.classify("/roll夜食表", "ch", "/roll", true).getCommand());
+	}
+
+	@Test
+	public void testMultiroll() {
+		Classification count = classifier.classify("3 2d6", "ch", "", true);
+		assertEquals(Kind.MULTIROLL_COUNT, count.getKind());
+		assertEquals(Arrays.asList("1", "2", "3"), count.getLabels());
+		assertEquals("2d6", count.getEach().getCommand());
+		assertFalse(count.isTooMany());
+		assertTrue(classifier.classify("21 夜食表", "ch", "", true).isTooMany());
+		assertEquals(Kind.IGNORE, classifier.classify("21 なにもない", "ch", "", true).getKind());
+		assertEquals(Integer.MAX_VALUE, classifier.classify("99999999999 2d6", "ch", "", true).getCount());
+
+		Classification targets = classifier.classify("/r [パンダ,うさぎ] [x] 2d6", "ch", "/r", true);
+		assertEquals(Kind.MULTIROLL_TARGETS, targets.getKind());
+		assertEquals(Arrays.asList("パンダ", "うさぎ] [x"), targets.getLabels());
+		Classification simple = classifier.classify("[パンダ,うさぎ,コアラ] 夜食表", "ch", "", true);
+		assertEquals(Arrays.asList("パンダ", "うさぎ", "コアラ"), simple.getLabels());
+		assertEquals(Kind.ORIGINAL_DICEBOT, simple.getEach().getKind());
+		// . of the regular expression doesn't match the new line
+		assertEquals(Kind.IGNORE, classifier.classify("[a\nb] 2d6", "ch", "", true).getKind());
+	}
+
+	@Test
+	public void testRejectWithoutAllocation() {
+		Classification first = classifier.classify("おはようございます", "ch", "", true);
+		assertSame(first, classifier.classify("lol", "ch", "", true));
+		assertSame(first, classifier.classify("hello", "ch", "/roll", true));
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(allocation.isThreadAllocatedMemorySupported());
+		allocation.setThreadAllocatedMemoryEnabled(true);
+		CommandPrefilter prefilter = new CommandPrefilter();
+		prefilter.compile("DiceBot", new SystemInfo("DiceBot", "DiceBot", Collections.<String>emptyList(), ""));
+		MessageClassifier chat = new MessageClassifier(
+				(message, start, end, channel) -> prefilter.mayBeCommand(message, start, end, "DiceBot"), names::findLongestPrefix);
+		String[] messages = {"おはようございます", "lol", "  hello", "http://example.com/", "今日のセッションは21時からです"};
+		for(int i = 0; i < 10000; i++) {
+			for(String message : messages) {
+				assertSame(first, chat.classify(message, "ch", "", true));
+			}
+		}
+		long thread = Thread.currentThread().getId();
+		long before = allocation.getThreadAllocatedBytes(thread);
+		for(int i = 0; i < 10000; i++) {
+			for(String message : messages) {
+				chat.classify(message, "ch", "", true);
+			}
+		}
+		long allocated = allocation.getThreadAllocatedBytes(thread) - before;
+		// A Matcher or a substring for each message would be over 1MB
+		assertTrue(allocated + " bytes are allocated", allocated < 16 * 1024);
+	}
+}
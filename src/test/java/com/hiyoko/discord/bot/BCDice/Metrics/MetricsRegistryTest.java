@@ -0,0 +1,88 @@
+package com.hiyoko.discord.bot.BCDice.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+	@Test
+	public void testScrape() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Counter ok = registry.counter("bcdice_api_requests_total", "Requests", "api", "v1/diceroll", "status", "200");
+		ok.increment();
+		ok.add(2);
+		assertSame(ok, registry.counter("bcdice_api_requests_total", "Requests", "api", "v1/diceroll", "status", "200"));
+		registry.counter("bcdice_api_requests_total", "Requests", "api", "v1/diceroll", "status", "500").increment();
+		registry.gauge("bcdice_queue", "Queue", () -> 7);
+		registry.counter("bcdice_label_escape_total", "Line\nbreak", "server", "a\"b\\c").increment();
+
+		String text = registry.scrape();
+		assertTrue(text, text.contains("# HELP bcdice_api_requests_total Requests\n# TYPE bcdice_api_requests_total counter\n"
+				+ "bcdice_api_requests_total{api=\"v1/diceroll\",status=\"200\"} 3\n"
+				+ "bcdice_api_requests_total{api=\"v1/diceroll\",status=\"500\"} 1\n"));
+		assertTrue(text, text.contains("# TYPE bcdice_queue gauge\nbcdice_queue 7\n"));
+		assertTrue(text, text.contains("# HELP bcdice_label_escape_total Line\\nbreak\n"));
+		assertTrue(text, text.contains("bcdice_label_escape_total{server=\"a\\\"b\\\\c\"} 1\n"));
+		try {
+			registry.histogram("bcdice_queue", "Queue");
+			throw new AssertionError("The type must not be changed");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Histogram histogram = registry.histogram("bcdice_discord_send_seconds", "Send", "kind", "reply");
+		histogram.observeNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		histogram.observeNanos(TimeUnit.MILLISECONDS.toNanos(30));
+		histogram.observeNanos(TimeUnit.SECONDS.toNanos(20));
+		assertEquals(3, histogram.getCount());
+
+		String text = registry.scrape();
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_bucket{kind=\"reply\",le=\"0.001\"} 1\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_bucket{kind=\"reply\",le=\"0.025\"} 1\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_bucket{kind=\"reply\",le=\"0.05\"} 2\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_bucket{kind=\"reply\",le=\"10.0\"} 2\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_bucket{kind=\"reply\",le=\"+Inf\"} 3\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_sum{kind=\"reply\"} 20.031\n"));
+		assertTrue(text, text.contains("bcdice_discord_send_seconds_count{kind=\"reply\"} 3\n"));
+
+		MetricsRegistry unlabeled = new MetricsRegistry();
+		unlabeled.register("bcdice_wait_seconds", "Wait", new Histogram(new double[]{1}));
+		assertTrue(unlabeled.scrape().contains("bcdice_wait_seconds_bucket{le=\"1.0\"} 0\n"));
+	}
+
+	@Test
+	public void testServer() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("bcdice_discord_messages_total", "Messages").add(94);
+		MetricsServer server = new MetricsServer(registry, "127.0.0.1", 0);
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+			assertEquals(200, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try(InputStream is = connection.getInputStream()) {
+				byte[] buffer = new byte[1024];
+				int read;
+				while((read = is.read(buffer)) > 0) {
+					body.write(buffer, 0, read);
+				}
+			}
+			assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("bcdice_discord_messages_total 94\n"));
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.dto.DicerollResult;
+
+public class MultirollRepeatTranslatorTest {
+	@Test
+	public void testToRepeatCommand() {
+		assertEquals("x3 2d6>=7", MultirollRepeatTranslator.toRepeatCommand(3, "2d6>=7"));
+	}
+
+	@Test
+	public void testSplitIndexed() {
+		DicerollResult result = new DicerollResult(": #1\n(2D6) ＞ 7[3,4] ＞ 7\n\n#2\n(2D6) ＞ 5[1,4] ＞ 5", "DiceBot", false, true);
+		List<String> texts = MultirollRepeatTranslator.split(result, 2);
+		assertEquals(2, texts.size());
+		assertEquals(": (2D6) ＞ 7[3,4] ＞ 7", texts.get(0));
+		assertEquals(": (2D6) ＞ 5[1,4] ＞ 5", texts.get(1));
+		assertNull(MultirollRepeatTranslator.split(result, 3));
+	}
+
+	@Test
+	public void testSplitPerLine() {
+		DicerollResult result = new DicerollResult(": (2D6) ＞ 7[3,4] ＞ 7\n(2D6) ＞ 5[1,4] ＞ 5\n", "DiceBot", false, true);
+		List<String> texts = MultirollRepeatTranslator.split(result, 2);
+		assertEquals(2, texts.size());
+		assertEquals(": (2D6) ＞ 5[1,4] ＞ 5", texts.get(1));
+	}
+
+	@Test
+	public void testSplitUnknown() {
+		assertNull(MultirollRepeatTranslator.split(new DicerollResult("x3%202d6", "DiceBot", true, true), 3));
+		assertNull(MultirollRepeatTranslator.split(new DicerollResult("", "", false, false), 3));
+		assertNull(MultirollRepeatTranslator.split(new DicerollResult("header\n#1\na\n#2\nb", "DiceBot", false, true), 2));
+	}
+}
@@ -0,0 +1,55 @@
+package com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiceBotDirectoryWatcherTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDebouncedChanges() throws Exception {
+		BlockingQueue<Set<String>> changes = new LinkedBlockingQueue<Set<String>>();
+		DiceBotDirectoryWatcher watcher = new DiceBotDirectoryWatcher(folder.getRoot().toPath(), 300,
+				changes::add, () -> changes.add(Collections.singleton("*")));
+		watcher.start();
+		try {
+			// The file name is ASCII, because the non-ASCII names can't be written under the C locale
+			File table = new File(folder.getRoot(), "ramen");
+			// A table written in pieces is told once
+			for(String line : new String[]{"1d2\n", "1:醤油\n", "2:味噌\n"}) {
+				write(table, line);
+				Thread.sleep(50);
+			}
+			Set<String> changed = changes.poll(20, TimeUnit.SECONDS);
+			assertNotNull(changed);
+			assertEquals(Collections.singleton("ramen"), changed);
+
+			table.delete();
+			changed = changes.poll(20, TimeUnit.SECONDS);
+			assertNotNull(changed);
+			assertEquals(Collections.singleton("ramen"), changed);
+		} finally {
+			watcher.stop();
+		}
+	}
+
+	private void write(File file, String text) throws IOException {
+		try(FileWriter writer = new FileWriter(file, true)) {
+			writer.write(text);
+		}
+	}
+}
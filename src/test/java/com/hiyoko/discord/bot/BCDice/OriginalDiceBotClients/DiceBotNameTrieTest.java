@@ -0,0 +1,24 @@
+package com.hiyoko.discord.bot.BCDice.OriginalDiceBotClients;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class DiceBotNameTrieTest {
+	@Test
+	public void testLongestPrefix() {
+		DiceBotNameTrie trie = new DiceBotNameTrie(Arrays.asList(
+				"サンプルダイスボット-ラーメン表", "サンプルダイスボット-夜食表", "夜食", "夜食表", ""));
+		assertEquals("サンプルダイスボット-ラーメン表", trie.findLongestPrefix("サンプルダイスボット-ラーメン表"));
+		assertEquals("サンプルダイスボット-夜食表", trie.findLongestPrefix("サンプルダイスボット-夜食表 今夜は何を食べよう"));
+		assertEquals("夜食表", trie.findLongestPrefix("夜食表を振る"));
+		assertEquals("夜食", trie.findLongestPrefix("夜食を振る"));
+		assertEquals("", trie.findLongestPrefix("サンプルダイスボット-"));
+		assertEquals("", trie.findLongestPrefix("2d6"));
+		assertEquals("", trie.findLongestPrefix(""));
+		assertEquals("", new DiceBotNameTrie(Collections.<String>emptyList()).findLongestPrefix("夜食"));
+	}
+}
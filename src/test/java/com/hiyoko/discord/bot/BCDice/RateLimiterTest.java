@@ -0,0 +1,86 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hiyoko.discord.bot.BCDice.RateLimiter.Limit;
+import com.hiyoko.discord.bot.BCDice.RateLimiter.RateLimitedException;
+
+public class RateLimiterTest {
+	private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+	private RateLimitedException assertRejected(RateLimiter limiter, String user, String channel, int cost) {
+		try {
+			limiter.acquire(user, channel, cost);
+		} catch (RateLimitedException e) {
+			return e;
+		}
+		fail(String.format("%s %s %d should be rejected", user, channel, cost));
+		return null;
+	}
+
+	@Test
+	public void testUserBucket() throws Exception {
+		// 1 token per second, 20 tokens at most
+		RateLimiter limiter = new RateLimiter(new Limit(60, 20), new Limit(0, 1), new Limit(0, 1), now::get);
+		limiter.acquire("user", "ch", 20);
+		RateLimitedException e = assertRejected(limiter, "user", "ch", 1);
+		assertTrue(e.isFirst());
+		assertTrue(e.getMessage(), e.getMessage().startsWith("あなたの"));
+		assertFalse(assertRejected(limiter, "user", "ch", 1).isFirst());
+		limiter.acquire("another", "ch", 20);
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+		limiter.acquire("user", "ch", 3);
+		assertTrue(assertRejected(limiter, "user", "ch", 1).isFirst());
+		assertEquals(3, limiter.getAllowedCount());
+		assertEquals(3, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testAllOrNothing() throws Exception {
+		RateLimiter limiter = new RateLimiter(new Limit(60, 10), new Limit(60, 15), new Limit(60, 100), now::get);
+		limiter.acquire("a", "ch", 10);
+		limiter.acquire("b", "ch", 5);
+		RateLimitedException e = assertRejected(limiter, "c", "ch", 5);
+		assertTrue(e.getMessage(), e.getMessage().startsWith("このチャンネルの"));
+		// the tokens of c are given back when the channel rejects
+		limiter.acquire("c", "other", 10);
+
+		RateLimiter global = new RateLimiter(new Limit(60, 10), new Limit(60, 10), new Limit(60, 12), now::get);
+		global.acquire("a", "ch1", 10);
+		assertTrue(assertRejected(global, "b", "ch2", 3).getMessage().startsWith("ボット全体の"));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		global.acquire("b", "ch2", 3);
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		RateLimiter limiter = new RateLimiter(new Limit(60, 10), new Limit(60, 10), new Limit(0, 1), now::get);
+		for(int i = 0; i < 1023; i++) {
+			limiter.acquire("user" + i, "ch" + i, 1);
+		}
+		assertEquals(2046, limiter.getBucketCount());
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		// the 1024th message sweeps the full buckets
+		limiter.acquire("user", "ch", 1);
+		assertEquals(2, limiter.getBucketCount());
+	}
+
+	@Test
+	public void testUnlimited() throws Exception {
+		RateLimiter limiter = RateLimiter.unlimited();
+		for(int i = 0; i < 1000; i++) {
+			limiter.acquire("user", "ch", 20);
+		}
+		limiter.acquire(null, null, 0);
+		assertEquals(0, limiter.getBucketCount());
+	}
+}
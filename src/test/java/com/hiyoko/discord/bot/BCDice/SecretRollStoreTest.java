@@ -0,0 +1,128 @@
+package com.hiyoko.discord.bot.BCDice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SecretRollStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void assertNotFound(SecretRollStore store, String userId, int index) {
+		try {
+			store.get(userId, index);
+			fail(index + " should be dropped");
+		} catch (IOException e) {
+			assertEquals("Not found", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testPerUserLimit() throws IOException {
+		SecretRollStore store = new SecretRollStore(2, 60000, 1024 * 1024, null, 0, System::currentTimeMillis);
+		assertEquals(1, store.save("hiyoko", "DiceBot: 1"));
+		assertEquals(2, store.save("hiyoko", "DiceBot: 2"));
+		assertEquals(3, store.save("hiyoko", "DiceBot: 3"));
+		assertEquals(1, store.save("hitsuji", "DiceBot: 4"));
+		assertNotFound(store, "hiyoko", 1);
+		assertEquals("DiceBot: 2", store.get("hiyoko", 2));
+		assertEquals("DiceBot: 3", store.get("hiyoko", 3));
+		assertEquals("DiceBot: 4", store.get("hitsuji", 1));
+		assertEquals(3, store.size());
+	}
+
+	@Test
+	public void testTtlAndBudget() throws IOException {
+		AtomicLong now = new AtomicLong(0);
+		SecretRollStore store = new SecretRollStore(100, 1000, 200, null, 0, now::get);
+		store.save("hiyoko", "a");
+		now.set(500);
+		store.save("hiyoko", "b");
+		now.set(1000);
+		assertNotFound(store, "hiyoko", 1);
+		assertEquals("b", store.get("hiyoko", 2));
+
+		store.save("hitsuji", "c");
+		store.save("hitsuji", "d");
+		// each result uses about 80 bytes, so only 2 results fit in the budget
+		assertTrue(store.getMemoryUsage() <= 200);
+		assertNotFound(store, "hiyoko", 2);
+		assertEquals("d", store.get("hitsuji", 2));
+		// the index is not reused after the results are dropped
+		assertEquals(1, store.getUserCount());
+		assertEquals(3, store.save("hiyoko", "e"));
+		assertEquals(2, store.getUserCount());
+
+		// the users without results are removed from memory
+		now.set(3000);
+		assertNotFound(store, "hiyoko", 3);
+		assertEquals(0, store.getUserCount());
+		assertEquals(4, store.save("hiyoko", "f"));
+		// the last index is also dropped after ttl
+		now.set(5000);
+		assertNotFound(store, "hiyoko", 4);
+		now.set(6001);
+		assertNotFound(store, "hiyoko", 4);
+		assertEquals(0, store.getMemoryUsage());
+		assertEquals(1, store.save("hiyoko", "g"));
+	}
+
+	@Test
+	public void testSpill() throws IOException {
+		File file = new File(folder.getRoot(), "secret.dat");
+		AtomicLong now = new AtomicLong(0);
+		SecretRollStore store = new SecretRollStore(1, 1000, 1024 * 1024, file, 10000, now::get);
+		store.save("hiyoko", "a");
+		store.save("hiyoko", "b");
+		assertEquals("a", store.get("hiyoko", 1));
+		assertEquals("b", store.get("hiyoko", 2));
+
+		// restart
+		now.set(5000);
+		SecretRollStore restarted = new SecretRollStore(1, 1000, 1024 * 1024, file, 10000, now::get);
+		assertEquals("b", restarted.get("hiyoko", 2));
+		assertEquals(3, restarted.save("hiyoko", "c"));
+		now.set(10001);
+		assertNotFound(restarted, "hiyoko", 1);
+		assertEquals("c", restarted.get("hiyoko", 3));
+	}
+
+	@Test
+	public void testSpillCompaction() throws IOException {
+		File file = new File(folder.getRoot(), "secret.dat");
+		AtomicLong now = new AtomicLong(0);
+		SecretRollStore store = new SecretRollStore(1, 1000, 1024 * 1024, file, 10000, 300, now::get);
+		for(int i = 1; i <= 5; i++) {
+			assertEquals(i, store.save("hiyoko", "DiceBot: " + i));
+		}
+		long beforeCompaction = store.getSpillLength();
+		assertEquals(beforeCompaction, file.length());
+		assertEquals("DiceBot: 1", store.get("hiyoko", 1));
+		assertEquals("DiceBot: 4", store.get("hiyoko", 4));
+
+		// the old results expire, and the file is compacted when it grows over the threshold
+		now.set(9500);
+		store.save("hitsuji", "DiceBot: 6");
+		now.set(10500);
+		for(int i = 7; i <= 9; i++) {
+			store.save("hitsuji", "DiceBot: " + i);
+		}
+		// only the results of hitsuji are kept. Its user id is 1 byte longer than hiyoko
+		assertEquals(4 * (beforeCompaction / 5 + 1), store.getSpillLength());
+		assertEquals(store.getSpillLength(), file.length());
+		assertNotFound(store, "hiyoko", 4);
+		assertEquals("DiceBot: 6", store.get("hitsuji", 1));
+		assertEquals("DiceBot: 9", store.get("hitsuji", 4));
+		// the index of the user in the file is not reused, but the user without any result starts from 1 again
+		assertEquals(5, store.save("hitsuji", "DiceBot: 10"));
+		assertEquals(1, store.save("hiyoko", "DiceBot: 11"));
+	}
+}
@@ -0,0 +1,43 @@
+package com.hiyoko.discord.bot.BCDice.dto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OriginalDiceBotTest {
+	@Test
+	public void testDenseTable() {
+		OriginalDiceBot bot = new OriginalDiceBot(Arrays.asList(
+				"2d6", "2:a", "3：b:c", "3:duplicated", "10:d", "12:e", "ヘルプ"), "sample");
+		assertEquals("2d6", bot.getCommand());
+		assertEquals("ヘルプ", bot.getHelp());
+		assertEquals("a", bot.getResult("2"));
+		assertEquals("b:c", bot.getResult("3"));
+		assertEquals("d", bot.getResult("10"));
+		assertEquals("結果なし", bot.getResult("1"));
+		assertEquals("結果なし", bot.getResult("4"));
+		assertEquals("結果なし", bot.getResult("13"));
+		assertEquals(": (2d6[12]） → \ne", bot.getResultAsShow("12"));
+	}
+
+	@Test
+	public void testSparseTable() {
+		OriginalDiceBot bot = new OriginalDiceBot(Arrays.asList(
+				"1d1000", "1:a", "500:b", "1000:c", "07:d", "99999999999:e", ""), "sample");
+		assertEquals(OriginalDiceBot.NO_HELP_MESSAGE, bot.getHelp());
+		assertEquals("a", bot.getResult("1"));
+		assertEquals("b", bot.getResult("500"));
+		assertEquals("c", bot.getResult("1000"));
+		assertEquals("d", bot.getResult("07"));
+		assertEquals("結果なし", bot.getResult("7"));
+		assertEquals("e", bot.getResult("99999999999"));
+	}
+
+	@Test
+	public void testNoHelp() {
+		assertEquals(OriginalDiceBot.NO_HELP_MESSAGE, new OriginalDiceBot(Arrays.asList("1d2", "1:a", "2:b"), "sample").getHelp());
+		assertEquals(OriginalDiceBot.NO_HELP_MESSAGE, new OriginalDiceBot(Arrays.asList("1d2"), "sample").getHelp());
+	}
+}
@@ -7,6 +7,50 @@ set IGNORE_ERROR=
 REM set BCDICE_PASSWORD=PleaseChangeMeIfYouUseThis
 REM set BCDICE_API_SECONDARY=http://secondary.bcdice-api.yourdomain.co.jp/
 REM set BCDICE_DEFAULT_SYSTEM=DiceBot
+REM set BCDICE_MULTIROLL_PARALLELISM=4
+REM set BCDICE_MULTIROLL_MODE=repeat
+REM set BCDICE_HTTP_MAX_TOTAL=50
+REM set BCDICE_HTTP_MAX_PER_ROUTE=20
+REM set BCDICE_API_BALANCER=ewma
+REM set BCDICE_BREAKER_FAILURES=5
+REM set BCDICE_BREAKER_OPEN_SECONDS=30
+REM set BCDICE_RETRY_MAX_ATTEMPTS=6
+REM set BCDICE_RETRY_BUDGET_RATIO=0.2
+REM set BCDICE_HEDGE=off
+REM set BCDICE_HEDGE_DELAY=p95
+REM set BCDICE_HEDGE_MAX_PERCENT=10
+REM set BCDICE_SYSTEMS_CACHE_TTL=3600
+REM set BCDICE_SYSTEMINFO_CACHE_SIZE=256
+REM set BCDICE_SYSTEMINFO_NOT_FOUND_TTL=600
+REM set BCDICE_CHANNEL_STORE_DIR=channelSystems
+REM set BCDICE_CHANNEL_STORE_COMPACT_RECORDS=10000
+REM set BCDICE_SECRET_PER_USER=100
+REM set BCDICE_SECRET_TTL_HOURS=24
+REM set BCDICE_SECRET_MEMORY_MB=16
+REM set BCDICE_SECRET_SPILL_FILE=secretRolls.dat
+REM set BCDICE_SECRET_SPILL_TTL_DAYS=30
+REM set BCDICE_ORIGINAL_DICEBOT_CACHE_MB=32
+REM set BCDICE_ORIGINAL_DICEBOT_WATCH=on
+REM set BCDICE_ORIGINAL_DICEBOT_WATCH_DEBOUNCE=500
+REM set BCDICE_LOCAL_DICE=off
+REM set BCDICE_LOCAL_DICE_SYSTEMS=DiceBot
+REM set BCDICE_NON_COMMAND_CACHE_SIZE=4096
+REM set BCDICE_NON_COMMAND_CACHE_TTL=3600
+REM set BCDICE_COMMAND_CACHE_SIZE=256
+REM set BCDICE_DISPATCH_VIRTUAL=on
+REM set BCDICE_DISPATCH_THREADS=16
+REM set BCDICE_DISPATCH_QUEUE=1000
+REM set BCDICE_RATE_LIMIT=on
+REM set BCDICE_RATE_USER_PER_MINUTE=30
+REM set BCDICE_RATE_USER_BURST=40
+REM set BCDICE_RATE_CHANNEL_PER_MINUTE=120
+REM set BCDICE_RATE_CHANNEL_BURST=80
+REM set BCDICE_RATE_GLOBAL_PER_MINUTE=1200
+REM set BCDICE_RATE_GLOBAL_BURST=400
+REM set BCDICE_METRICS_PORT=0
+REM set BCDICE_METRICS_HOST=127.0.0.1
+REM set BCDICE_SECRET_SPILL_COMPACT_MB=16
+REM set BCDICE_VERSION_CHECK_INTERVAL=600
 
 java -jar discord-bcdicebot.jar %DISCORD_BOT_TOKEN% %BCDICE_API_URL% %IGNORE_ERROR%
 pause
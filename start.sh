@@ -6,5 +6,49 @@ IGNORE_ERROR=
 # BCDICE_PASSWORD=PleaseChangeMeIfYouUseThis
 # BCDICE_API_SECONDARY=http://secondary.bcdice-api.yourdomain.co.jp/
 # BCDICE_DEFAULT_SYSTEM=DiceBot
+# BCDICE_MULTIROLL_PARALLELISM=4
+# BCDICE_MULTIROLL_MODE=repeat
+# BCDICE_HTTP_MAX_TOTAL=50
+# BCDICE_HTTP_MAX_PER_ROUTE=20
+# BCDICE_API_BALANCER=ewma
+# BCDICE_BREAKER_FAILURES=5
+# BCDICE_BREAKER_OPEN_SECONDS=30
+# BCDICE_RETRY_MAX_ATTEMPTS=6
+# BCDICE_RETRY_BUDGET_RATIO=0.2
+# BCDICE_HEDGE=off
+# BCDICE_HEDGE_DELAY=p95
+# BCDICE_HEDGE_MAX_PERCENT=10
+# BCDICE_SYSTEMS_CACHE_TTL=3600
+# BCDICE_SYSTEMINFO_CACHE_SIZE=256
+# BCDICE_SYSTEMINFO_NOT_FOUND_TTL=600
+# BCDICE_CHANNEL_STORE_DIR=channelSystems
+# BCDICE_CHANNEL_STORE_COMPACT_RECORDS=10000
+# BCDICE_SECRET_PER_USER=100
+# BCDICE_SECRET_TTL_HOURS=24
+# BCDICE_SECRET_MEMORY_MB=16
+# BCDICE_SECRET_SPILL_FILE=secretRolls.dat
+# BCDICE_SECRET_SPILL_TTL_DAYS=30
+# BCDICE_ORIGINAL_DICEBOT_CACHE_MB=32
+# BCDICE_ORIGINAL_DICEBOT_WATCH=on
+# BCDICE_ORIGINAL_DICEBOT_WATCH_DEBOUNCE=500
+# BCDICE_LOCAL_DICE=off
+# BCDICE_LOCAL_DICE_SYSTEMS=DiceBot
+# BCDICE_NON_COMMAND_CACHE_SIZE=4096
+# BCDICE_NON_COMMAND_CACHE_TTL=3600
+# BCDICE_COMMAND_CACHE_SIZE=256
+# BCDICE_DISPATCH_VIRTUAL=on
+# BCDICE_DISPATCH_THREADS=16
+# BCDICE_DISPATCH_QUEUE=1000
+# BCDICE_RATE_LIMIT=on
+# BCDICE_RATE_USER_PER_MINUTE=30
+# BCDICE_RATE_USER_BURST=40
+# BCDICE_RATE_CHANNEL_PER_MINUTE=120
+# BCDICE_RATE_CHANNEL_BURST=80
+# BCDICE_RATE_GLOBAL_PER_MINUTE=1200
+# BCDICE_RATE_GLOBAL_BURST=400
+# BCDICE_METRICS_PORT=0
+# BCDICE_METRICS_HOST=127.0.0.1
+# BCDICE_SECRET_SPILL_COMPACT_MB=16
+# BCDICE_VERSION_CHECK_INTERVAL=600
 
 java -jar discord-bcdicebot.jar "$DISCORD_BOT_TOKEN" "$BCDICE_API_URL" "$IGNORE_ERROR"